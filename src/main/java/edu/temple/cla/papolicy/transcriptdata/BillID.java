@@ -7,11 +7,13 @@ package edu.temple.cla.papolicy.transcriptdata;
 
 import java.util.HashSet;
 import java.util.Set;
+import javax.persistence.Entity;
 
 /**
  *
  * @author Paul Wolfgang
  */
+@Entity
 public class BillID {
 
 
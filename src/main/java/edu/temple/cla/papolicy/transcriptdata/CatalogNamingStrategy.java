@@ -0,0 +1,40 @@
+package edu.temple.cla.papolicy.transcriptdata;
+
+import org.hibernate.boot.model.naming.Identifier;
+import org.hibernate.boot.model.naming.PhysicalNamingStrategyStandardImpl;
+import org.hibernate.engine.jdbc.env.spi.JdbcEnvironment;
+
+/**
+ * Naming strategy that replaces the catalog given in the hbm.xml mapping files
+ * with another catalog. This allows the same mappings to be used against a
+ * staging copy of the tables.
+ *
+ * @author Paul Wolfgang
+ */
+public class CatalogNamingStrategy extends PhysicalNamingStrategyStandardImpl {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The catalog that is named in the mapping files. */
+    public static final String MAPPED_CATALOG = "PAPolicy_Copy";
+
+    private final String catalog;
+
+    /**
+     * Constructor.
+     *
+     * @param catalog The catalog to be used in place of the mapped catalog
+     */
+    public CatalogNamingStrategy(String catalog) {
+        this.catalog = catalog;
+    }
+
+    @Override
+    public Identifier toPhysicalCatalogName(Identifier name, JdbcEnvironment context) {
+        if (name != null && MAPPED_CATALOG.equals(name.getText())) {
+            return Identifier.toIdentifier(catalog, name.isQuoted());
+        }
+        return name;
+    }
+
+}
@@ -3,6 +3,7 @@ package edu.temple.cla.papolicy.transcriptdata;
 
 import java.util.HashSet;
 import java.util.Set;
+import javax.persistence.Entity;
 
 
 
@@ -10,6 +11,7 @@ import java.util.Set;
 /**
  * CommitteeAliases generated by hbm2java
  */
+@Entity
 public class CommitteeAliases  implements java.io.Serializable {
 
 
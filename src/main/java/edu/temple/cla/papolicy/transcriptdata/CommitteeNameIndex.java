@@ -0,0 +1,373 @@
+package edu.temple.cla.papolicy.transcriptdata;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.log4j.Logger;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+
+/**
+ * In-memory trigram index over the committee alias and committee names, used
+ * to resolve a committee name from the House feed that has no exact match
+ * before a new "Other House/Senate Committee" alias is created for it. Names
+ * are compared after folding case, replacing &amp; with "and", and reducing
+ * punctuation to spaces; the similarity of two names is the Dice coefficient
+ * of their sets of character trigrams.
+ * <p>
+ * The aliases are partitioned by chamber using the same rule as the exact
+ * lookup in TranscriptDAO (a CtyCode starting with 1 or 2, or else the
+ * Chamber column), and a match is only accepted if the hearing year lies
+ * between the alias's StartYear and EndYear. The "Other" aliases (CtyCode
+ * 199 and 299) are not indexed, so a misspelling is never matched to an
+ * earlier misspelling.
+ * <p>
+ * Lookups whose best similarity is below the confident similarity, whether
+ * or not it reached the threshold, are kept for review (see
+ * writeLowConfidenceMatches) once per chamber, name, and hearing year, with
+ * the number of lookups. The first lookup of each is logged as a warning.
+ * The indexed names do not change once the index is built, and it may be
+ * shared by any number of threads.
+ *
+ * @author Paul Wolfgang
+ */
+public class CommitteeNameIndex {
+
+    private static final Logger LOGGER = Logger.getLogger(CommitteeNameIndex.class);
+
+    private final Map<Integer, Partition> partitions = new HashMap<>();
+    /** The low confidence matches by chamber, name, and year, guarded by itself. */
+    private final Map<String, Review> lowConfidenceMatches = new LinkedHashMap<>();
+    private double threshold = 0.75;
+    private double confidentSimilarity = 0.9;
+
+    /**
+     * The indexed names of one chamber.
+     */
+    private static class Partition {
+
+        private final List<Entry> entries = new ArrayList<>();
+        private Map<Long, int[]> postings;
+    }
+
+    /**
+     * One indexed name.
+     */
+    private static class Entry {
+
+        private final short id;
+        private final String name;
+        private final int startYear;
+        private final int endYear;
+        private final long[] trigrams;
+
+        private Entry(short id, String name, int startYear, int endYear) {
+            this.id = id;
+            this.name = name;
+            this.startYear = startYear;
+            this.endYear = endYear;
+            this.trigrams = trigrams(name);
+        }
+    }
+
+    /**
+     * A low confidence match and the number of times it was looked up.
+     */
+    private static class Review {
+
+        private final Match match;
+        private int lookups;
+
+        private Review(Match match) {
+            this.match = match;
+        }
+    }
+
+    /**
+     * The result of a lookup.
+     */
+    public static class Match {
+
+        private final int chamber;
+        private final String query;
+        private final Integer year;
+        private final short id;
+        private final String name;
+        private final double similarity;
+        private final boolean accepted;
+
+        private Match(int chamber, String query, Integer year, short id, String name,
+                double similarity, boolean accepted) {
+            this.chamber = chamber;
+            this.query = query;
+            this.year = year;
+            this.id = id;
+            this.name = name;
+            this.similarity = similarity;
+            this.accepted = accepted;
+        }
+
+        /** @return The chamber, 1 for House, 2 for Senate */
+        public int getChamber() {return chamber;}
+
+        /** @return The name that was looked up */
+        public String getQuery() {return query;}
+
+        /** @return The hearing year, or null */
+        public Integer getYear() {return year;}
+
+        /** @return The ID of the best matching CommitteeAliases record */
+        public short getId() {return id;}
+
+        /** @return The alias or committee name that matched best */
+        public String getName() {return name;}
+
+        /** @return The similarity, from 0 to 1 */
+        public double getSimilarity() {return similarity;}
+
+        /** @return true if the similarity reached the threshold */
+        public boolean isAccepted() {return accepted;}
+
+        @Override
+        public String toString() {
+            return String.format("%s \"%s\" (%s) -> %d \"%s\" similarity %.2f%s",
+                    chamber == 2 ? "Senate" : "House", query, year, id, name, similarity,
+                    accepted ? "" : ", not accepted");
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param aliases The CommitteeAliases records to be indexed
+     */
+    public CommitteeNameIndex(List<CommitteeAliases> aliases) {
+        for (CommitteeAliases alias : aliases) {
+            int chamber = chamberOf(alias);
+            if (chamber == 0 || (alias.getCtyCode() != null && alias.getCtyCode() % 100 == 99)) {
+                continue;
+            }
+            Partition partition = partitions.computeIfAbsent(chamber, (k) -> new Partition());
+            int startYear = alias.getStartYear() == null ? Integer.MIN_VALUE : alias.getStartYear();
+            int endYear = alias.getEndYear() == null ? Integer.MAX_VALUE : alias.getEndYear();
+            for (String name : new String[]{alias.getAlternateName(), alias.getName()}) {
+                if (name != null && !name.trim().isEmpty()) {
+                    partition.entries.add(new Entry(alias.getId(), name, startYear, endYear));
+                }
+            }
+        }
+        for (Partition partition : partitions.values()) {
+            Map<Long, List<Integer>> lists = new HashMap<>();
+            for (int i = 0; i < partition.entries.size(); i++) {
+                for (long trigram : partition.entries.get(i).trigrams) {
+                    lists.computeIfAbsent(trigram, (k) -> new ArrayList<>()).add(i);
+                }
+            }
+            partition.postings = new HashMap<>(lists.size() * 2);
+            lists.forEach((trigram, list) -> partition.postings.put(trigram,
+                    list.stream().mapToInt(Integer::intValue).toArray()));
+        }
+    }
+
+    /**
+     * Method to build the index from the CommitteeAliases table.
+     *
+     * @param factory The SessionFactory
+     * @return The index
+     */
+    public static CommitteeNameIndex load(SessionFactory factory) {
+        try (StatelessSession session = factory.openStatelessSession()) {
+            // The transcripts collection cannot be fetched by a stateless
+            // session, so the columns are selected instead of the entities.
+            List<CommitteeAliases> aliases = new ArrayList<>();
+            session.createQuery("select c.id, c.ctyCode, c.alternateName, c.startYear, c.endYear,"
+                    + " c.chamber, c.name from CommitteeAliases c", Object[].class)
+                    .list()
+                    .forEach(row -> aliases.add(new CommitteeAliases((Short) row[0], (Short) row[1],
+                            (String) row[2], (Short) row[3], (Short) row[4], (Short) row[5], (String) row[6])));
+            CommitteeNameIndex index = new CommitteeNameIndex(aliases);
+            LOGGER.info("Indexed " + aliases.size() + " committee aliases");
+            return index;
+        }
+    }
+
+    /**
+     * @param threshold The smallest similarity, from 0 to 1, that is accepted
+     * as a match (default 0.75)
+     */
+    public void setThreshold(double threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * @param confidentSimilarity The similarity below which lookups are kept
+     * for review (default 0.9)
+     */
+    public void setConfidentSimilarity(double confidentSimilarity) {
+        this.confidentSimilarity = confidentSimilarity;
+    }
+
+    /**
+     * Method to find the alias that best matches a committee name.
+     *
+     * @param chamber Chamber 1 for House, 2 for Senate
+     * @param committeeAliasName The committee name
+     * @param year The hearing year, or null to accept aliases of any year
+     * @return The best match if its similarity reaches the threshold,
+     * otherwise null
+     */
+    public Match find(int chamber, String committeeAliasName, Integer year) {
+        Partition partition = partitions.get(chamber);
+        if (partition == null) {
+            return null;
+        }
+        long[] query = trigrams(committeeAliasName);
+        int[] shared = new int[partition.entries.size()];
+        for (long trigram : query) {
+            int[] posting = partition.postings.get(trigram);
+            if (posting != null) {
+                for (int i : posting) {
+                    shared[i]++;
+                }
+            }
+        }
+        int best = -1;
+        double bestSimilarity = 0;
+        for (int i = 0; i < shared.length; i++) {
+            Entry entry = partition.entries.get(i);
+            if (shared[i] == 0 || (year != null && (year < entry.startYear || year > entry.endYear))) {
+                continue;
+            }
+            double similarity = 2.0 * shared[i] / (query.length + entry.trigrams.length);
+            if (similarity > bestSimilarity) {
+                best = i;
+                bestSimilarity = similarity;
+            }
+        }
+        if (best == -1) {
+            return null;
+        }
+        Entry entry = partition.entries.get(best);
+        Match match = new Match(chamber, committeeAliasName, year, entry.id, entry.name,
+                bestSimilarity, bestSimilarity >= threshold);
+        if (bestSimilarity < confidentSimilarity) {
+            String key = chamber + "\t" + committeeAliasName + "\t" + year;
+            int lookups;
+            synchronized (lowConfidenceMatches) {
+                lookups = ++lowConfidenceMatches.computeIfAbsent(key, (k) -> new Review(match)).lookups;
+            }
+            if (lookups == 1) {
+                LOGGER.warn("Low confidence committee match " + match);
+            } else if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Low confidence committee match " + match);
+            }
+        }
+        return match.isAccepted() ? match : null;
+    }
+
+    /**
+     * @return The distinct matches, by chamber, name, and hearing year, whose
+     * similarity was below the confident similarity, in the order they were
+     * first made, each with the number of times it was looked up
+     */
+    public Map<Match, Integer> getLowConfidenceMatches() {
+        Map<Match, Integer> result = new LinkedHashMap<>();
+        synchronized (lowConfidenceMatches) {
+            for (Review review : lowConfidenceMatches.values()) {
+                result.put(review.match, review.lookups);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Method to write the low confidence matches for review, one tab
+     * separated line per distinct match after a heading line: chamber,
+     * committee name, hearing year, ID and name of the best matching alias,
+     * similarity, whether the match was accepted, and the number of lookups.
+     *
+     * @param out The destination
+     * @throws IOException If the matches cannot be written
+     */
+    public void writeLowConfidenceMatches(Writer out) throws IOException {
+        out.write("chamber\tcommittee\tyear\taliasID\talias\tsimilarity\taccepted\tlookups\n");
+        for (Map.Entry<Match, Integer> entry : getLowConfidenceMatches().entrySet()) {
+            Match match = entry.getKey();
+            out.write(String.format("%s\t%s\t%s\t%d\t%s\t%.3f\t%s\t%d%n",
+                    match.getChamber() == 2 ? "Senate" : "House", match.getQuery(),
+                    match.getYear() == null ? "" : match.getYear(), match.getId(), match.getName(),
+                    match.getSimilarity(), match.isAccepted(), entry.getValue()));
+        }
+        out.flush();
+    }
+
+    /**
+     * Method to determine the chamber of an alias as TranscriptDAO does.
+     *
+     * @return 1 for House, 2 for Senate, or 0 if unknown
+     */
+    private static int chamberOf(CommitteeAliases alias) {
+        if (alias.getCtyCode() != null) {
+            String ctyCode = alias.getCtyCode().toString();
+            return ctyCode.startsWith("1") ? 1 : ctyCode.startsWith("2") ? 2 : 0;
+        }
+        return alias.getChamber() == null ? 0 : alias.getChamber();
+    }
+
+    /**
+     * Method to get the distinct trigrams of a normalized name, each packed
+     * into a long. The name is padded with spaces so that the start and end
+     * of words count.
+     */
+    static long[] trigrams(String name) {
+        String normalized = " " + normalize(name) + " ";
+        long[] result = new long[Math.max(0, normalized.length() - 2)];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ((long) normalized.charAt(i) << 32)
+                    | ((long) normalized.charAt(i + 1) << 16) | normalized.charAt(i + 2);
+        }
+        Arrays.sort(result);
+        int distinct = 0;
+        for (int i = 0; i < result.length; i++) {
+            if (i == 0 || result[i] != result[i - 1]) {
+                result[distinct++] = result[i];
+            }
+        }
+        return Arrays.copyOf(result, distinct);
+    }
+
+    /**
+     * Method to fold case, replace &amp; with "and", and reduce everything
+     * other than letters and digits to single spaces.
+     */
+    static String normalize(String name) {
+        StringBuilder stb = new StringBuilder(name.length() + 8);
+        boolean space = true;
+        for (int i = 0; i < name.length(); i++) {
+            char c = Character.toLowerCase(name.charAt(i));
+            if (c == '&') {
+                if (!space) {
+                    stb.append(' ');
+                }
+                stb.append("and ");
+                space = true;
+            } else if (Character.isLetterOrDigit(c)) {
+                stb.append(c);
+                space = false;
+            } else if (!space) {
+                stb.append(' ');
+                space = true;
+            }
+        }
+        if (space && stb.length() > 0) {
+            stb.setLength(stb.length() - 1);
+        }
+        return stb.toString();
+    }
+
+}
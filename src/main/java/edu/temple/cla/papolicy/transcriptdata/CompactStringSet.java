@@ -0,0 +1,163 @@
+package edu.temple.cla.papolicy.transcriptdata;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * An exact set of strings that keeps its contents in a single byte array
+ * rather than as individual String objects. Each entry costs its UTF-8 length
+ * plus two bytes in the arena and two ints in the open addressed hash table,
+ * which is several times smaller than a HashSet&lt;String&gt; for short keys
+ * such as transcript IDs.
+ *
+ * @author Paul Wolfgang
+ */
+public class CompactStringSet {
+
+    private static final int EMPTY = -1;
+    private static final double MAX_LOAD = 0.6;
+
+    private byte[] arena;
+    private int arenaSize;
+    private int[] offsets;
+    private int[] hashes;
+    private int size;
+
+    /**
+     * Constructor.
+     *
+     * @param expectedSize The expected number of entries
+     */
+    public CompactStringSet(int expectedSize) {
+        int capacity = Integer.highestOneBit((int) Math.max(16, expectedSize / MAX_LOAD)) << 1;
+        offsets = new int[capacity];
+        hashes = new int[capacity];
+        Arrays.fill(offsets, EMPTY);
+        arena = new byte[Math.max(256, expectedSize * 14)];
+    }
+
+    /**
+     * Method to add a string to the set.
+     *
+     * @param s The string to be added
+     * @return true if the string was not already present
+     */
+    public boolean add(String s) {
+        byte[] key = s.getBytes(StandardCharsets.UTF_8);
+        int hash = (int) hash64(s);
+        int slot = find(key, hash);
+        if (offsets[slot] != EMPTY) {
+            return false;
+        }
+        offsets[slot] = append(key);
+        hashes[slot] = hash;
+        if (++size > offsets.length * MAX_LOAD) {
+            rehash();
+        }
+        return true;
+    }
+
+    /**
+     * Method to determine if a string is in the set.
+     *
+     * @param s The string to be tested
+     * @return true if the string is present
+     */
+    public boolean contains(String s) {
+        byte[] key = s.getBytes(StandardCharsets.UTF_8);
+        return offsets[find(key, (int) hash64(s))] != EMPTY;
+    }
+
+    /**
+     * @return the number of entries in the set
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Method to locate the slot that contains the key, or the empty slot where
+     * it would be inserted.
+     */
+    private int find(byte[] key, int hash) {
+        int mask = offsets.length - 1;
+        int slot = hash & mask;
+        while (offsets[slot] != EMPTY) {
+            if (hashes[slot] == hash && equalsAt(offsets[slot], key)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private boolean equalsAt(int offset, byte[] key) {
+        int length = ((arena[offset] & 0xff) << 8) | (arena[offset + 1] & 0xff);
+        if (length != key.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (arena[offset + 2 + i] != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int append(byte[] key) {
+        if (key.length > 0xffff) {
+            throw new IllegalArgumentException("Key too long: " + key.length + " bytes");
+        }
+        int needed = arenaSize + 2 + key.length;
+        if (needed > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(needed, arena.length + (arena.length >> 1)));
+        }
+        int offset = arenaSize;
+        arena[offset] = (byte) (key.length >>> 8);
+        arena[offset + 1] = (byte) key.length;
+        System.arraycopy(key, 0, arena, offset + 2, key.length);
+        arenaSize = needed;
+        return offset;
+    }
+
+    private void rehash() {
+        int[] oldOffsets = offsets;
+        int[] oldHashes = hashes;
+        offsets = new int[oldOffsets.length << 1];
+        hashes = new int[offsets.length];
+        Arrays.fill(offsets, EMPTY);
+        int mask = offsets.length - 1;
+        for (int i = 0; i < oldOffsets.length; i++) {
+            if (oldOffsets[i] != EMPTY) {
+                int slot = oldHashes[i] & mask;
+                while (offsets[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                offsets[slot] = oldOffsets[i];
+                hashes[slot] = oldHashes[i];
+            }
+        }
+    }
+
+    /**
+     * Method to compute a 64 bit hash of a string. FNV-1a over the characters
+     * followed by a final avalanche mix.
+     *
+     * @param s The string
+     * @return The hash value
+     */
+    private static long hash64(CharSequence s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+}
@@ -0,0 +1,137 @@
+package edu.temple.cla.papolicy.transcriptdata;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes the transcripts as CSV files (RFC 4180) in a directory, one file
+ * per table so that they can be loaded or joined like the database tables:
+ * <ul>
+ * <li>transcripts.csv: id and the transcript properties</li>
+ * <li>witnesses.csv: transcriptID and the witness properties</li>
+ * <li>transcript_bills.csv: transcriptID, billID</li>
+ * <li>transcript_committees.csv: transcriptID, chamber, name</li>
+ * </ul>
+ * Each file starts with a header line. Absent values are empty fields.
+ *
+ * @author Paul Wolfgang
+ */
+public class CsvSink extends FlatFileSink {
+
+    private final Writer transcripts;
+    private final Writer witnesses;
+    private final Writer bills;
+    private final Writer committees;
+    private final StringBuilder record = new StringBuilder(4096);
+
+    /**
+     * Constructor.
+     *
+     * @param directory The output directory, which is created if necessary.
+     * Existing files are replaced.
+     * @throws IOException If the files cannot be opened
+     */
+    public CsvSink(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        transcripts = openWriter(directory.resolve("transcripts.csv"));
+        witnesses = openWriter(directory.resolve("witnesses.csv"));
+        bills = openWriter(directory.resolve("transcript_bills.csv"));
+        committees = openWriter(directory.resolve("transcript_committees.csv"));
+        transcripts.append("id,").append(String.join(",", TranscriptColumns.TRANSCRIPT)).append("\r\n");
+        witnesses.append("transcriptID,").append(String.join(",", TranscriptColumns.WITNESS)).append("\r\n");
+        bills.append("transcriptID,billID\r\n");
+        committees.append("transcriptID,chamber,name\r\n");
+    }
+
+    @Override
+    public void write(Transcript t) throws IOException {
+        writeRecord(transcripts, t.getId(), TranscriptColumns.values(t));
+        if (t.getWitnesses() != null) {
+            for (Witness witness : t.getWitnesses()) {
+                writeRecord(witnesses, t.getId(), TranscriptColumns.values(witness));
+            }
+        }
+        if (t.getBills() != null) {
+            for (BillID billID : t.getBills()) {
+                writeRecord(bills, t.getId(), billID.getBillID());
+            }
+        }
+        if (t.getCommittees() != null) {
+            for (CommitteeAliases committee : t.getCommittees()) {
+                writeRecord(committees, t.getId(), committee.getChamber(), committee.getAlternateName());
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        transcripts.flush();
+        witnesses.flush();
+        bills.flush();
+        committees.flush();
+    }
+
+    /**
+     * Method to close the four files. Every file is closed even if closing
+     * another fails; the first exception is thrown with the others added to
+     * it as suppressed exceptions.
+     *
+     * @throws IOException If a file cannot be written or closed
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (Writer writer : new Writer[]{transcripts, witnesses, bills, committees}) {
+            try {
+                writer.close();
+            } catch (IOException ex) {
+                if (failure == null) {
+                    failure = ex;
+                } else {
+                    failure.addSuppressed(ex);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void writeRecord(Writer out, String id, Object... values) throws IOException {
+        record.setLength(0);
+        appendField(id);
+        for (Object value : values) {
+            record.append(',');
+            appendField(format(value));
+        }
+        record.append("\r\n");
+        out.append(record);
+    }
+
+    private void appendField(String s) {
+        if (s == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < s.length() && !quote; i++) {
+            char c = s.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            record.append(s);
+            return;
+        }
+        record.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"') {
+                record.append('"');
+            }
+            record.append(c);
+        }
+        record.append('"');
+    }
+
+}
@@ -0,0 +1,229 @@
+package edu.temple.cla.papolicy.transcriptdata;
+
+import edu.temple.cla.papolicy.xmlutil.XMLUtil;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.apache.log4j.Logger;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+
+/**
+ * Detects duplicate transcript IDs before anything is written to the database.
+ * Since the Transcript ID is assigned from the id attribute of the transcript
+ * element, a duplicate would otherwise only be discovered when the commit
+ * fails. The IDs already in the database are streamed into a compact exact
+ * set. The input IDs are kept in a second compact set so that duplicates
+ * within and across the input files are found as well. A transcript without
+ * an id attribute is reported as an error of its own rather than as a
+ * duplicate.
+ *
+ * @author Paul Wolfgang
+ */
+public class DuplicateIdDetector {
+
+    private static final Logger LOGGER = Logger.getLogger(DuplicateIdDetector.class);
+
+    private final CompactStringSet databaseIds;
+    private final CompactStringSet inputIds;
+    private final List<Duplicate> duplicates = new ArrayList<>();
+
+    /**
+     * A transcript ID that was found more than once.
+     */
+    public static class Duplicate {
+
+        private final String id;
+        private final String source;
+        private final boolean inDatabase;
+
+        Duplicate(String id, String source, boolean inDatabase) {
+            this.id = id;
+            this.source = source;
+            this.inDatabase = inDatabase;
+        }
+
+        /**
+         * @return the duplicated transcript ID
+         */
+        public String getId() {return id;}
+
+        /**
+         * @return the name of the input in which the duplicate was found
+         */
+        public String getSource() {return source;}
+
+        /**
+         * @return true if the ID is already in the database, false if it is
+         * repeated within the input
+         */
+        public boolean isInDatabase() {return inDatabase;}
+
+        @Override
+        public String toString() {
+            return id + " in " + source
+                    + (inDatabase ? " already exists in the database"
+                            : " is repeated in the input");
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param expectedDatabaseIds The expected number of IDs in the database
+     * @param expectedInputIds The expected number of IDs in the input
+     */
+    public DuplicateIdDetector(int expectedDatabaseIds, int expectedInputIds) {
+        databaseIds = new CompactStringSet(expectedDatabaseIds);
+        inputIds = new CompactStringSet(expectedInputIds);
+    }
+
+    /**
+     * Method to create a detector seeded with the IDs already in the
+     * Transcript table.
+     *
+     * @param factory The SessionFactory
+     * @param expectedInputIds An estimate of the number of IDs in the input
+     * @return a seeded detector
+     */
+    public static DuplicateIdDetector fromDatabase(SessionFactory factory, int expectedInputIds) {
+        try (StatelessSession session = factory.openStatelessSession()) {
+            long count = session.createQuery("select count(t.id) from Transcript t", Long.class)
+                    .uniqueResult();
+            DuplicateIdDetector detector
+                    = new DuplicateIdDetector((int) count, expectedInputIds);
+            // Integer.MIN_VALUE asks Connector/J to stream rows instead of
+            // buffering the entire result set.
+            try (ScrollableResults ids = session.createQuery("select t.id from Transcript t", String.class)
+                    .setFetchSize(Integer.MIN_VALUE)
+                    .setReadOnly(true)
+                    .scroll(ScrollMode.FORWARD_ONLY)) {
+                while (ids.next()) {
+                    detector.seed((String) ids.get(0));
+                }
+            }
+            LOGGER.info("Seeded duplicate detector with " + detector.databaseIds.size()
+                    + " existing transcript IDs");
+            return detector;
+        }
+    }
+
+    /**
+     * Method to record an ID that is already in the database, or that has
+     * since been loaded into it.
+     *
+     * @param id The transcript ID
+     */
+    public void seed(String id) {
+        databaseIds.add(id);
+    }
+
+    /**
+     * Method to check an ID from the input and record it.
+     *
+     * @param id The transcript ID
+     * @param source The name of the input containing the ID
+     * @return true if the ID was not seen before
+     */
+    public boolean check(String id, String source) {
+        if (!inputIds.add(id)) {
+            duplicates.add(new Duplicate(id, source, false));
+            return false;
+        }
+        if (isInDatabase(id)) {
+            duplicates.add(new Duplicate(id, source, true));
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Method to scan a transcript XML file and check each transcript ID.
+     *
+     * @param file The file to be scanned
+     * @throws IOException If the file cannot be read, or if a transcript has
+     * no id attribute
+     */
+    public void scanFile(File file) throws IOException {
+        try (InputStream in = XMLUtil.openInput(file.getPath())) {
+            scan(in, file.getName());
+        }
+    }
+
+    /**
+     * Method to scan a transcript XML document and check each transcript ID.
+     * The document is read with a streaming parser; no DOM tree is built.
+     *
+     * @param in The input stream
+     * @param source The name of the input used in reports
+     * @throws IOException If the document cannot be read or parsed, or if a
+     * transcript has no id attribute
+     */
+    public void scan(InputStream in, String source) throws IOException {
+        readIds(in, source, id -> check(id, source));
+    }
+
+    /**
+     * Method to read the transcript IDs from a transcript XML document without
+     * checking them. The document is read with a streaming parser.
+     *
+     * @param in The input stream
+     * @param source The name of the input used in error messages
+     * @param consumer Receives each transcript ID in document order
+     * @throws IOException If the document cannot be read or parsed, or if a
+     * transcript has no id attribute
+     */
+    public static void readIds(InputStream in, String source, Consumer<String> consumer)
+            throws IOException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        try {
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT
+                            && "transcript".equals(reader.getLocalName())) {
+                        String id = reader.getAttributeValue(null, "id");
+                        if (id == null || id.isEmpty()) {
+                            throw new IOException("Transcript without an id attribute at line "
+                                    + reader.getLocation().getLineNumber() + " of " + source);
+                        }
+                        consumer.accept(id);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException ex) {
+            throw new IOException("Error scanning " + source, ex);
+        }
+    }
+
+    /**
+     * Method to determine if an ID was seeded as being in the database.
+     *
+     * @param id The transcript ID
+     * @return true if the ID is in the database
+     */
+    public boolean isInDatabase(String id) {
+        return databaseIds.contains(id);
+    }
+
+    /**
+     * @return the duplicates found so far
+     */
+    public List<Duplicate> getDuplicates() {
+        return duplicates;
+    }
+
+}
@@ -0,0 +1,60 @@
+package edu.temple.cla.papolicy.transcriptdata;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Base class for the sinks that write the transcripts to files for analysis
+ * without going through the database. For the text formats, output goes
+ * through a large character buffer to an encoder writing directly to a
+ * FileChannel.
+ *
+ * @author Paul Wolfgang
+ */
+public abstract class FlatFileSink implements TranscriptSink, Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+
+    /**
+     * Method to create or replace a file and open it for writing as UTF-8.
+     *
+     * @param path The file
+     * @return A buffered Writer for the file
+     * @throws IOException If the file cannot be opened
+     */
+    protected static Writer openWriter(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        return new BufferedWriter(Channels.newWriter(channel,
+                StandardCharsets.UTF_8.newEncoder(), BUFFER_SIZE), BUFFER_SIZE);
+    }
+
+    /**
+     * Method to convert a property value to text. Dates are written as
+     * yyyy-MM-dd.
+     *
+     * @param value The value
+     * @return The text, or null if the value is null
+     */
+    protected String format(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Date) {
+            return dateFormat.format((Date) value);
+        }
+        return value.toString();
+    }
+
+}
@@ -0,0 +1,317 @@
+package edu.temple.cla.papolicy.transcriptdata;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import org.apache.log4j.Logger;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.type.BooleanType;
+import org.hibernate.type.IntegerType;
+import org.hibernate.type.StringType;
+
+/**
+ * Summary tables holding the number of hearings (and of budget related
+ * hearings) by committee code and year, by chamber and month, and by bill.
+ * The tables are kept up to date by TranscriptDAO in the same transaction
+ * that inserts the transcripts, so dashboard queries can read a single row
+ * instead of aggregating the Transcript and join tables. A hearing with no
+ * hearing year or month is counted under 0.
+ * <p>
+ * The tables are created in the same catalog as the Transcript table:
+ * <ul>
+ * <li>HearingsByCommitteeYear (ctyCode, hearingYear, hearings, budgetRelated)</li>
+ * <li>HearingsByChamberMonth (chamber, hearingYear, hearingMonth, hearings, budgetRelated)</li>
+ * <li>HearingsByBill (billID, hearings, budgetRelated)</li>
+ * </ul>
+ *
+ * @author Paul Wolfgang
+ */
+public class HearingRollups {
+
+    private static final Logger LOGGER = Logger.getLogger(HearingRollups.class);
+
+    private final SessionFactory sessionFactory;
+    private final String byCommitteeYear;
+    private final String byChamberMonth;
+    private final String byBill;
+    private final String transcript;
+    private final String transcriptCommittee;
+    private final String transcriptBillID;
+    private final String committeeAliases;
+
+    /**
+     * Constructor.
+     *
+     * @param factory The SessionFactory
+     */
+    public HearingRollups(SessionFactory factory) {
+        this.sessionFactory = factory;
+        transcript = TranscriptDAO.tableName(factory, Transcript.class);
+        committeeAliases = TranscriptDAO.tableName(factory, CommitteeAliases.class);
+        String catalogPrefix = transcript.substring(0, transcript.lastIndexOf('.') + 1);
+        transcriptCommittee = catalogPrefix + "Transcript_Committee";
+        transcriptBillID = catalogPrefix + "Transcript_BillID";
+        byCommitteeYear = catalogPrefix + "HearingsByCommitteeYear";
+        byChamberMonth = catalogPrefix + "HearingsByChamberMonth";
+        byBill = catalogPrefix + "HearingsByBill";
+    }
+
+    /**
+     * Method to create the summary tables if they do not exist.
+     */
+    public void createTables() {
+        try (Session session = sessionFactory.openSession()) {
+            Transaction tx = session.beginTransaction();
+            session.createNativeQuery("create table if not exists " + byCommitteeYear
+                    + " (ctyCode smallint not null, hearingYear int not null,"
+                    + " hearings int not null, budgetRelated int not null,"
+                    + " primary key (ctyCode, hearingYear)) engine=InnoDB").executeUpdate();
+            session.createNativeQuery("create table if not exists " + byChamberMonth
+                    + " (chamber smallint not null, hearingYear int not null, hearingMonth int not null,"
+                    + " hearings int not null, budgetRelated int not null,"
+                    + " primary key (chamber, hearingYear, hearingMonth)) engine=InnoDB").executeUpdate();
+            session.createNativeQuery("create table if not exists " + byBill
+                    + " (billID varchar(20) not null,"
+                    + " hearings int not null, budgetRelated int not null,"
+                    + " primary key (billID)) engine=InnoDB").executeUpdate();
+            tx.commit();
+        }
+    }
+
+    /**
+     * @return a new, empty set of changes
+     */
+    public Changes newChanges() {
+        return new Changes();
+    }
+
+    /**
+     * The changes to the summary tables made by the transcripts in one
+     * transaction. The changes are accumulated as transcripts are inserted and
+     * written just before the commit, in key order so that concurrent
+     * transactions lock the summary rows in the same order.
+     */
+    public class Changes {
+
+        private final Map<List<Integer>, int[]> committeeYear = new TreeMap<>(KEY_ORDER);
+        private final Map<List<Integer>, int[]> chamberMonth = new TreeMap<>(KEY_ORDER);
+        private final Map<String, int[]> bill = new TreeMap<>();
+
+        private Changes() {
+        }
+
+        /**
+         * Method to count a transcript whose committees and bills have been
+         * set.
+         *
+         * @param t The Transcript
+         */
+        public void record(Transcript t) {
+            record(t, 1);
+        }
+
+        /**
+         * Method to uncount a transcript that is being replaced or deleted.
+         * Its committees and bills must be loaded.
+         *
+         * @param t The Transcript as stored in the database
+         */
+        public void remove(Transcript t) {
+            record(t, -1);
+        }
+
+        private void record(Transcript t, int sign) {
+            int year = t.getHearingYear() == null ? 0 : t.getHearingYear();
+            int month = t.getHearingMonth() == null ? 0 : t.getHearingMonth();
+            boolean budgetRelated = Boolean.TRUE.equals(t.getBudgetRelated());
+            if (t.getCommittees() != null) {
+                Set<Integer> ctyCodes = new HashSet<>();
+                Set<Integer> chambers = new HashSet<>();
+                for (CommitteeAliases committee : t.getCommittees()) {
+                    if (committee.getCtyCode() != null) {
+                        ctyCodes.add((int) committee.getCtyCode());
+                    }
+                    if (committee.getChamber() != null) {
+                        chambers.add((int) committee.getChamber());
+                    }
+                }
+                ctyCodes.forEach(ctyCode -> count(committeeYear, Arrays.asList(ctyCode, year), budgetRelated, sign));
+                chambers.forEach(chamber -> count(chamberMonth, Arrays.asList(chamber, year, month), budgetRelated, sign));
+            }
+            if (t.getBills() != null) {
+                t.getBills().forEach(billID -> count(bill, billID.getBillID(), budgetRelated, sign));
+            }
+        }
+
+        /**
+         * Method to write the accumulated changes as part of the session's
+         * current transaction, and then clear them.
+         *
+         * @param session The session
+         */
+        public void apply(Session session) {
+            committeeYear.forEach((key, counts) -> session.createNativeQuery("insert into " + byCommitteeYear
+                    + " (ctyCode, hearingYear, hearings, budgetRelated) values (:ctyCode, :year, :hearings, :budget)"
+                    + " on duplicate key update hearings = hearings + values(hearings),"
+                    + " budgetRelated = budgetRelated + values(budgetRelated)")
+                    .setParameter("ctyCode", key.get(0))
+                    .setParameter("year", key.get(1))
+                    .setParameter("hearings", counts[0])
+                    .setParameter("budget", counts[1])
+                    .executeUpdate());
+            chamberMonth.forEach((key, counts) -> session.createNativeQuery("insert into " + byChamberMonth
+                    + " (chamber, hearingYear, hearingMonth, hearings, budgetRelated)"
+                    + " values (:chamber, :year, :month, :hearings, :budget)"
+                    + " on duplicate key update hearings = hearings + values(hearings),"
+                    + " budgetRelated = budgetRelated + values(budgetRelated)")
+                    .setParameter("chamber", key.get(0))
+                    .setParameter("year", key.get(1))
+                    .setParameter("month", key.get(2))
+                    .setParameter("hearings", counts[0])
+                    .setParameter("budget", counts[1])
+                    .executeUpdate());
+            bill.forEach((key, counts) -> session.createNativeQuery("insert into " + byBill
+                    + " (billID, hearings, budgetRelated) values (:billID, :hearings, :budget)"
+                    + " on duplicate key update hearings = hearings + values(hearings),"
+                    + " budgetRelated = budgetRelated + values(budgetRelated)")
+                    .setParameter("billID", key)
+                    .setParameter("hearings", counts[0])
+                    .setParameter("budget", counts[1])
+                    .executeUpdate());
+            clear();
+        }
+
+        /**
+         * Method to discard the accumulated changes, e.g. after a rollback.
+         */
+        public void clear() {
+            committeeYear.clear();
+            chamberMonth.clear();
+            bill.clear();
+        }
+    }
+
+    /**
+     * Method to recompute the summary tables from the Transcript and join
+     * tables. The rows are streamed and counted in memory (the counts are
+     * small), then the tables are replaced in a single transaction.
+     */
+    public void rebuild() {
+        Map<List<Integer>, int[]> committeeYear = new TreeMap<>(KEY_ORDER);
+        Map<List<Integer>, int[]> chamberMonth = new TreeMap<>(KEY_ORDER);
+        Map<String, int[]> bill = new TreeMap<>();
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            // Rows are ordered by transcript so that a committee code or
+            // chamber listed twice for one transcript is counted once. The
+            // column types are given since they cannot be looked up while
+            // the result is streaming.
+            try (ScrollableResults rows = session.createNativeQuery(
+                    "select t.ID as id, t.hearingYear as year, t.hearingMonth as month,"
+                    + " t.budgetRelated as budget, c.CtyCode as ctyCode, c.Chamber as chamber"
+                    + " from " + transcript + " t"
+                    + " join " + transcriptCommittee + " tc on tc.transcriptID = t.ID"
+                    + " join " + committeeAliases + " c on c.ID = tc.committeeID"
+                    + " order by t.ID")
+                    .addScalar("id", StringType.INSTANCE)
+                    .addScalar("year", IntegerType.INSTANCE)
+                    .addScalar("month", IntegerType.INSTANCE)
+                    .addScalar("budget", BooleanType.INSTANCE)
+                    .addScalar("ctyCode", IntegerType.INSTANCE)
+                    .addScalar("chamber", IntegerType.INSTANCE)
+                    .setFetchSize(Integer.MIN_VALUE)
+                    .scroll(ScrollMode.FORWARD_ONLY)) {
+                String currentID = null;
+                Set<List<Integer>> seen = new HashSet<>();
+                while (rows.next()) {
+                    String id = (String) rows.get(0);
+                    if (!id.equals(currentID)) {
+                        currentID = id;
+                        seen.clear();
+                    }
+                    int year = intValue(rows.get(1));
+                    int month = intValue(rows.get(2));
+                    boolean budgetRelated = booleanValue(rows.get(3));
+                    if (rows.get(4) != null) {
+                        List<Integer> key = Arrays.asList(intValue(rows.get(4)), year);
+                        if (seen.add(Arrays.asList(0, key.get(0)))) {
+                            count(committeeYear, key, budgetRelated);
+                        }
+                    }
+                    if (rows.get(5) != null) {
+                        List<Integer> key = Arrays.asList(intValue(rows.get(5)), year, month);
+                        if (seen.add(Arrays.asList(1, key.get(0)))) {
+                            count(chamberMonth, key, budgetRelated);
+                        }
+                    }
+                }
+            }
+            try (ScrollableResults rows = session.createNativeQuery(
+                    "select tb.BillID as billID, t.budgetRelated as budget"
+                    + " from " + transcriptBillID + " tb"
+                    + " join " + transcript + " t on t.ID = tb.TranscriptID")
+                    .addScalar("billID", StringType.INSTANCE)
+                    .addScalar("budget", BooleanType.INSTANCE)
+                    .setFetchSize(Integer.MIN_VALUE)
+                    .scroll(ScrollMode.FORWARD_ONLY)) {
+                while (rows.next()) {
+                    count(bill, (String) rows.get(0), booleanValue(rows.get(1)));
+                }
+            }
+        }
+        createTables();
+        try (Session session = sessionFactory.openSession()) {
+            Transaction tx = session.beginTransaction();
+            session.createNativeQuery("delete from " + byCommitteeYear).executeUpdate();
+            session.createNativeQuery("delete from " + byChamberMonth).executeUpdate();
+            session.createNativeQuery("delete from " + byBill).executeUpdate();
+            Changes changes = newChanges();
+            changes.committeeYear.putAll(committeeYear);
+            changes.chamberMonth.putAll(chamberMonth);
+            changes.bill.putAll(bill);
+            changes.apply(session);
+            tx.commit();
+        }
+        LOGGER.info("Rebuilt hearing rollups: " + committeeYear.size() + " committee/year, "
+                + chamberMonth.size() + " chamber/month, " + bill.size() + " bill rows");
+    }
+
+    private static final Comparator<List<Integer>> KEY_ORDER = (a, b) -> {
+        for (int i = 0; i < a.size(); i++) {
+            int c = Integer.compare(a.get(i), b.get(i));
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    };
+
+    private static <K> void count(Map<K, int[]> counts, K key, boolean budgetRelated) {
+        count(counts, key, budgetRelated, 1);
+    }
+
+    private static <K> void count(Map<K, int[]> counts, K key, boolean budgetRelated, int sign) {
+        int[] c = counts.computeIfAbsent(key, (k) -> new int[2]);
+        c[0] += sign;
+        if (budgetRelated) {
+            c[1] += sign;
+        }
+    }
+
+    private static int intValue(Object o) {
+        return o == null ? 0 : (Integer) o;
+    }
+
+    private static boolean booleanValue(Object o) {
+        return Boolean.TRUE.equals(o);
+    }
+
+}
@@ -0,0 +1,132 @@
+package edu.temple.cla.papolicy.transcriptdata;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+
+/**
+ * Writes each transcript as one JSON object per line (JSON Lines). The object
+ * holds the id, the transcript properties (null if absent), and the arrays
+ * bills (IDs), committees (objects with chamber and name), and witnesses.
+ * Numbers and booleans are written as JSON numbers and booleans.
+ *
+ * @author Paul Wolfgang
+ */
+public class JsonLinesSink extends FlatFileSink {
+
+    private final Writer out;
+    private final StringBuilder line = new StringBuilder(4096);
+
+    /**
+     * Constructor.
+     *
+     * @param file The output file, which is replaced if it exists
+     * @throws IOException If the file cannot be opened
+     */
+    public JsonLinesSink(Path file) throws IOException {
+        out = openWriter(file);
+    }
+
+    @Override
+    public void write(Transcript t) throws IOException {
+        line.setLength(0);
+        line.append("{\"id\":");
+        appendValue(t.getId());
+        appendFields(TranscriptColumns.TRANSCRIPT, TranscriptColumns.values(t), true);
+        line.append(",\"bills\":[");
+        if (t.getBills() != null) {
+            String separator = "";
+            for (BillID billID : t.getBills()) {
+                line.append(separator);
+                appendValue(billID.getBillID());
+                separator = ",";
+            }
+        }
+        line.append("],\"committees\":[");
+        if (t.getCommittees() != null) {
+            String separator = "";
+            for (CommitteeAliases committee : t.getCommittees()) {
+                line.append(separator).append("{\"chamber\":");
+                appendValue(committee.getChamber());
+                line.append(",\"name\":");
+                appendValue(committee.getAlternateName());
+                line.append('}');
+                separator = ",";
+            }
+        }
+        line.append("],\"witnesses\":[");
+        if (t.getWitnesses() != null) {
+            String separator = "";
+            for (Witness witness : t.getWitnesses()) {
+                line.append(separator).append('{');
+                appendFields(TranscriptColumns.WITNESS, TranscriptColumns.values(witness), false);
+                line.append('}');
+                separator = ",";
+            }
+        }
+        line.append("]}\n");
+        out.append(line);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void appendFields(String[] names, Object[] values, boolean afterField) {
+        for (int i = 0; i < names.length; i++) {
+            if (afterField || i > 0) {
+                line.append(',');
+            }
+            line.append('"').append(names[i]).append("\":");
+            appendValue(values[i]);
+        }
+    }
+
+    private void appendValue(Object value) {
+        if (value == null) {
+            line.append("null");
+        } else if (value instanceof Number || value instanceof Boolean) {
+            line.append(value);
+        } else {
+            appendString(format(value));
+        }
+    }
+
+    private void appendString(String s) {
+        line.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    line.append("\\\"");
+                    break;
+                case '\\':
+                    line.append("\\\\");
+                    break;
+                case '\n':
+                    line.append("\\n");
+                    break;
+                case '\r':
+                    line.append("\\r");
+                    break;
+                case '\t':
+                    line.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+            }
+        }
+        line.append('"');
+    }
+
+}
@@ -0,0 +1,115 @@
+package edu.temple.cla.papolicy.transcriptdata;
+
+import java.sql.SQLException;
+import org.apache.log4j.Logger;
+
+/**
+ * Adaptive throttle for loads that share the database with interactive
+ * users. The number of transcripts committed per transaction is adjusted with
+ * an additive increase, multiplicative decrease (AIMD) controller. Each
+ * commit that completes within the latency budget adds one to the batch size,
+ * and a commit that exceeds the budget, or that fails with a lock wait
+ * timeout or deadlock, halves it. The load therefore settles at the largest
+ * transactions that can be committed within the budget, which bounds how long
+ * other users can be blocked by its locks.
+ * <p>
+ * A single instance may be shared by several TranscriptDAO objects running on
+ * different threads; they then share one batch size.
+ *
+ * @author Paul Wolfgang
+ */
+public class LoadGovernor {
+
+    private static final Logger LOGGER = Logger.getLogger(LoadGovernor.class);
+    /** MySQL error code for a lock wait timeout */
+    private static final int ER_LOCK_WAIT_TIMEOUT = 1205;
+    /** MySQL error code for a deadlock */
+    private static final int ER_LOCK_DEADLOCK = 1213;
+
+    private final long latencyBudgetNanos;
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private int batchSize;
+    private long contentions;
+
+    /**
+     * Constructor.
+     *
+     * @param latencyBudgetMillis The target time for a single transaction
+     * @param maxBatchSize The largest number of transcripts per transaction
+     */
+    public LoadGovernor(long latencyBudgetMillis, int maxBatchSize) {
+        this.latencyBudgetNanos = latencyBudgetMillis * 1_000_000L;
+        this.minBatchSize = 1;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.batchSize = minBatchSize;
+    }
+
+    /**
+     * @return the number of transcripts to be committed in the next transaction
+     */
+    public synchronized int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @return the number of transactions that have failed because of lock
+     * contention
+     */
+    public synchronized long getContentionCount() {
+        return contentions;
+    }
+
+    /**
+     * Method to report a successful commit.
+     *
+     * @param elapsedNanos The time taken to flush and commit the transaction
+     */
+    public synchronized void onCommit(long elapsedNanos) {
+        if (elapsedNanos > latencyBudgetNanos) {
+            batchSize = Math.max(minBatchSize, batchSize / 2);
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Commit took " + elapsedNanos / 1_000_000 + " ms, batch size reduced to " + batchSize);
+            }
+        } else {
+            batchSize = Math.min(maxBatchSize, batchSize + 1);
+        }
+    }
+
+    /**
+     * Method to report that a transaction failed because of lock contention.
+     *
+     * @return The time in milliseconds to wait before retrying
+     */
+    public synchronized long onContention() {
+        contentions++;
+        batchSize = Math.max(minBatchSize, batchSize / 2);
+        LOGGER.warn("Lock contention, batch size reduced to " + batchSize);
+        return latencyBudgetNanos / 1_000_000;
+    }
+
+    /**
+     * Method to determine if an exception was caused by a lock wait timeout
+     * or a deadlock, in which case the transaction may be retried.
+     *
+     * @param ex The exception
+     * @return true if the exception indicates lock contention
+     */
+    public static boolean isContention(Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException) {
+                SQLException sqlException = (SQLException) cause;
+                if (sqlException.getErrorCode() == ER_LOCK_WAIT_TIMEOUT
+                        || sqlException.getErrorCode() == ER_LOCK_DEADLOCK
+                        || "40001".equals(sqlException.getSQLState())) {
+                    return true;
+                }
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+
+}
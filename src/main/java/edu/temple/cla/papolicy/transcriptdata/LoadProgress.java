@@ -0,0 +1,95 @@
+package edu.temple.cla.papolicy.transcriptdata;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Periodic progress of loading one document, logged in place of a message per
+ * transcript. At most one progress message is logged per interval, giving the
+ * number of transcripts loaded, the rate, and the estimated time remaining,
+ * and a summary is logged at the end. The messages are key=value pairs so
+ * that they can be parsed from the log:
+ * <pre>
+ * event=progress file=hearings.xml transcripts=1200/30000 rate=850.2/s eta=34s
+ * event=loaded file=hearings.xml transcripts=30000 seconds=35.3 rate=849.9/s
+ * </pre>
+ * Instances are used by a single thread.
+ *
+ * @author Paul Wolfgang
+ */
+public class LoadProgress {
+
+    private static final Logger LOGGER = Logger.getLogger(LoadProgress.class);
+
+    private final String file;
+    private final long intervalNanos;
+    private final long startNanos;
+    private long nextReportNanos;
+    private int total = -1;
+    private int loaded;
+
+    /**
+     * Constructor.
+     *
+     * @param file The name of the document, or null if it was read from a
+     * stream
+     * @param intervalMillis The least time between progress messages
+     */
+    public LoadProgress(String file, long intervalMillis) {
+        this.file = file == null ? "stream" : file;
+        this.intervalNanos = intervalMillis * 1_000_000;
+        this.startNanos = System.nanoTime();
+        this.nextReportNanos = startNanos + intervalNanos;
+    }
+
+    /**
+     * @param total The number of transcripts in the document, used for the
+     * estimated time remaining
+     */
+    public void setTotal(int total) {
+        this.total = total;
+    }
+
+    /**
+     * Method to record that transcripts have been committed, logging the
+     * progress if the interval has passed.
+     *
+     * @param transcripts The number of transcripts
+     */
+    public void loaded(int transcripts) {
+        loaded += transcripts;
+        long now = System.nanoTime();
+        if (now - nextReportNanos >= 0) {
+            nextReportNanos = now + intervalNanos;
+            if (LOGGER.isInfoEnabled()) {
+                double rate = rate(now);
+                StringBuilder message = new StringBuilder(96)
+                        .append("event=progress file=").append(file)
+                        .append(" transcripts=").append(loaded);
+                if (total >= 0) {
+                    message.append('/').append(total);
+                    if (rate > 0) {
+                        message.append(" rate=").append(String.format("%.1f", rate)).append("/s eta=")
+                                .append(Math.round((total - loaded) / rate)).append('s');
+                    }
+                } else {
+                    message.append(" rate=").append(String.format("%.1f", rate)).append("/s");
+                }
+                LOGGER.info(message);
+            }
+        }
+    }
+
+    /**
+     * Method to log the summary at the end of the document.
+     */
+    public void finish() {
+        long now = System.nanoTime();
+        LOGGER.info(String.format("event=loaded file=%s transcripts=%d seconds=%.1f rate=%.1f/s",
+                file, loaded, (now - startNanos) / 1e9, rate(now)));
+    }
+
+    private double rate(long now) {
+        return now == startNanos ? 0 : loaded * 1e9 / (now - startNanos);
+    }
+
+}
@@ -0,0 +1,128 @@
+package edu.temple.cla.papolicy.transcriptdata;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The Hibernate mapping files and support for caching their parsed form.
+ * Hibernate can serialize the parsed form of a mapping file next to the file
+ * (see Configuration.addCacheableFile) and reuse it as long as it is newer
+ * than the XML, which avoids the JAXB parse on every start. Since that only
+ * works for real files, the mapping resources are copied to a cache directory.
+ * Because Hibernate deserializes whatever it finds beside the mapping files,
+ * the cache directory must be private to the user: it is created with owner
+ * only permissions, and a directory owned by another user or writable by
+ * others is refused.
+ *
+ * @author Paul Wolfgang
+ */
+public class MappingFiles {
+
+    /** The mapping resources on the class path. */
+    public static final String[] RESOURCES = {
+        "Transcript.hbm.xml",
+        "Witness.hbm.xml",
+        "CommitteeAliases.hbm.xml",
+        "BillID.hbm.xml"
+    };
+
+    /**
+     * Method to copy the mapping resources to a cache directory. A file is
+     * only rewritten if its content has changed, so that the serialized form
+     * Hibernate keeps beside it stays valid.
+     *
+     * @param cacheDirectory The directory to hold the mapping files
+     * @return The mapping files in the cache directory
+     * @throws IOException If the files cannot be written, or if the directory
+     * is not private to the current user
+     */
+    public static List<File> extract(File cacheDirectory) throws IOException {
+        Path directory = createPrivateDirectory(cacheDirectory.toPath());
+        List<File> result = new ArrayList<>();
+        for (String resource : RESOURCES) {
+            byte[] content = readResource(resource);
+            Path target = directory.resolve(resource);
+            if (!Files.exists(target) || !Arrays.equals(content, Files.readAllBytes(target))) {
+                // Write then rename so a concurrent reader never sees a partial file
+                Path temp = Files.createTempFile(directory, resource, ".tmp");
+                Files.write(temp, content);
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            }
+            result.add(target.toFile());
+        }
+        return result;
+    }
+
+    /**
+     * Method to create the cache directory, or check an existing one. On file
+     * systems without POSIX permissions the directory is used as it is.
+     *
+     * @param directory The directory
+     * @return The directory
+     * @throws IOException If the directory cannot be created or is owned by
+     * another user or accessible to the group or others
+     */
+    private static Path createPrivateDirectory(Path directory) throws IOException {
+        boolean posix = directory.getFileSystem().supportedFileAttributeViews().contains("posix");
+        if (!Files.isDirectory(directory)) {
+            Path parent = directory.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            if (posix) {
+                Files.createDirectory(directory,
+                        PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+            } else {
+                Files.createDirectory(directory);
+            }
+        }
+        if (posix) {
+            PosixFileAttributes attributes = Files.getFileAttributeView(directory,
+                    PosixFileAttributeView.class).readAttributes();
+            String user = System.getProperty("user.name");
+            if (!attributes.owner().getName().equals(user)) {
+                throw new IOException("Mapping cache " + directory + " is owned by "
+                        + attributes.owner().getName() + ", not " + user);
+            }
+            for (PosixFilePermission permission : attributes.permissions()) {
+                if (permission != PosixFilePermission.OWNER_READ
+                        && permission != PosixFilePermission.OWNER_WRITE
+                        && permission != PosixFilePermission.OWNER_EXECUTE) {
+                    throw new IOException("Mapping cache " + directory
+                            + " is accessible to other users ("
+                            + PosixFilePermissions.toString(attributes.permissions()) + ")");
+                }
+            }
+        }
+        return directory;
+    }
+
+    private static byte[] readResource(String resource) throws IOException {
+        try (InputStream in = MappingFiles.class.getClassLoader().getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IOException("Mapping resource " + resource + " not found");
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+package edu.temple.cla.papolicy.transcriptdata;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cache of reference data that is looked up for every transcript. A single
+ * instance may be shared by any number of TranscriptDAO objects (and threads)
+ * so that a long running process only pays for each lookup once. Only the
+ * primary keys are cached; the entities themselves are always obtained from
+ * the current Session. The cache may also hold a CommitteeNameIndex used to
+ * resolve committee names that have no exact match.
+ * <p>
+ * The cache assumes that a CommitteeAliases record is not deleted, renumbered,
+ * or renamed while it is in use. A cached ID whose record is missing or no
+ * longer has the committee name is removed when it is looked up, and the name
+ * is looked up again; a long running process, such as the DirectoryWatcher,
+ * also calls clear after each file so that changes made between files are
+ * seen. Changes made by others while a file is being loaded may not be seen
+ * until the next file.
+ *
+ * @author Paul Wolfgang
+ */
+public class ReferenceDataCache {
+
+    private final ConcurrentMap<String, Short> committeeIDs = new ConcurrentHashMap<>();
+    private volatile CommitteeNameIndex committeeNameIndex;
+
+    /**
+     * Method to get the ID of the CommitteeAliases record for a committee name.
+     *
+     * @param chamber Chamber 1 for House, 2 for Senate
+     * @param committeeAliasName The committee name
+     * @return The ID or null if the name has not been cached
+     */
+    public Short getCommitteeID(int chamber, String committeeAliasName) {
+        return committeeIDs.get(key(chamber, committeeAliasName));
+    }
+
+    /**
+     * Method to record the ID of the CommitteeAliases record for a committee
+     * name.
+     *
+     * @param chamber Chamber 1 for House, 2 for Senate
+     * @param committeeAliasName The committee name
+     * @param id The ID of the CommitteeAliases record
+     */
+    public void putCommitteeID(int chamber, String committeeAliasName, short id) {
+        committeeIDs.put(key(chamber, committeeAliasName), id);
+    }
+
+    /**
+     * Method to discard the ID of the CommitteeAliases record for a committee
+     * name, e.g. because the record no longer exists.
+     *
+     * @param chamber Chamber 1 for House, 2 for Senate
+     * @param committeeAliasName The committee name
+     */
+    public void removeCommitteeID(int chamber, String committeeAliasName) {
+        committeeIDs.remove(key(chamber, committeeAliasName));
+    }
+
+    /**
+     * @return The index used to match committee names that are not found
+     * exactly, or null if names are only matched exactly
+     */
+    public CommitteeNameIndex getCommitteeNameIndex() {
+        return committeeNameIndex;
+    }
+
+    /**
+     * @param committeeNameIndex The index used to match committee names that
+     * are not found exactly, or null
+     */
+    public void setCommitteeNameIndex(CommitteeNameIndex committeeNameIndex) {
+        this.committeeNameIndex = committeeNameIndex;
+    }
+
+    /**
+     * Method to discard all cached entries. The committee name index is
+     * kept.
+     */
+    public void clear() {
+        committeeIDs.clear();
+    }
+
+    private static String key(int chamber, String committeeAliasName) {
+        return chamber + ":" + committeeAliasName;
+    }
+
+}
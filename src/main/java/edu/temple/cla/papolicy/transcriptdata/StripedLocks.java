@@ -0,0 +1,42 @@
+package edu.temple.cla.papolicy.transcriptdata;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed set of locks selected by the hash of a key. Operations on the same
+ * key always use the same lock, while operations on different keys usually
+ * use different locks and can proceed in parallel.
+ *
+ * @author Paul Wolfgang
+ */
+public class StripedLocks {
+
+    private final Lock[] locks;
+
+    /**
+     * Constructor.
+     *
+     * @param stripes The number of locks, rounded up to a power of two
+     */
+    public StripedLocks(int stripes) {
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        locks = new Lock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Method to get the lock for a key.
+     *
+     * @param key The key
+     * @return The lock that guards the key
+     */
+    public Lock get(Object key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return locks[h & (locks.length - 1)];
+    }
+
+}
@@ -5,10 +5,17 @@ package edu.temple.cla.papolicy.transcriptdata;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Set;
+import javax.persistence.Basic;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
 
 /**
  * Transcript generated by hbm2java
+ * <p>
+ * The mapping is in Transcript.hbm.xml. The annotations only mark the class
+ * for bytecode enhancement and document the lazy text properties.
  */
+@Entity
 public class Transcript  implements java.io.Serializable {
 
 
@@ -28,10 +35,13 @@ public class Transcript  implements java.io.Serializable {
      private Date receivedDate;
      private String comments;
      private Date datePresentedToHouse;
+     @Basic(fetch = FetchType.LAZY)
      private String summary;
      private Boolean hasAudio;
+     @Basic(fetch = FetchType.LAZY)
      private String audioNotes;
      private Boolean hasVideo;
+     @Basic(fetch = FetchType.LAZY)
      private String videoNotes;
      private String transcriptURL;
      private Set<CommitteeAliases> committees;
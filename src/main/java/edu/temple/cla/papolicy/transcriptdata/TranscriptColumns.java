@@ -0,0 +1,56 @@
+package edu.temple.cla.papolicy.transcriptdata;
+
+/**
+ * The Transcript and Witness properties written by the exporters and flat
+ * file sinks, in order. The names are also the element names used in the
+ * transcript XML. The derived hearingDate and receivedDate are not included.
+ *
+ * @author Paul Wolfgang
+ */
+final class TranscriptColumns {
+
+    /** The Transcript properties other than the ID. */
+    static final String[] TRANSCRIPT = {
+        "year", "number", "budgetRelated", "hearingYear", "hearingMonth",
+        "hearingDay", "hearingLocation", "pages", "receivedYear",
+        "receivedMonth", "receviedDay", "comments", "datePresentedToHouse",
+        "summary", "hasAudio", "audioNotes", "hasVideo", "videoNotes",
+        "transcriptURL"
+    };
+
+    /** The Witness properties other than the ID and transcript. */
+    static final String[] WITNESS = {
+        "salutation", "firstName", "middleName", "suffix", "lastName", "title",
+        "testimonyURL"
+    };
+
+    private TranscriptColumns() {
+    }
+
+    /**
+     * @param t The Transcript
+     * @return The values of the TRANSCRIPT properties
+     */
+    static Object[] values(Transcript t) {
+        return new Object[]{
+            t.getYear(), t.getNumber(), t.getBudgetRelated(), t.getHearingYear(),
+            t.getHearingMonth(), t.getHearingDay(), t.getHearingLocation(),
+            t.getPages(), t.getReceivedYear(), t.getReceivedMonth(),
+            t.getReceviedDay(), t.getComments(), t.getDatePresentedToHouse(),
+            t.getSummary(), t.getHasAudio(), t.getAudioNotes(), t.getHasVideo(),
+            t.getVideoNotes(), t.getTranscriptURL()
+        };
+    }
+
+    /**
+     * @param w The Witness
+     * @return The values of the WITNESS properties
+     */
+    static Object[] values(Witness w) {
+        return new Object[]{
+            w.getSalutation(), w.getFirstName(), w.getMiddleName(), w.getSuffix(),
+            w.getLastName(), w.getTitle(), w.getTestimonyURL()
+        };
+    }
+
+}
@@ -1,42 +1,55 @@
 package edu.temple.cla.papolicy.transcriptdata;
 
 import edu.temple.cla.papolicy.xmlutil.XMLUtil;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.Serializable;
-import java.time.LocalDate;
-import java.time.ZoneOffset;
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import java.util.concurrent.locks.Lock;
 import org.apache.log4j.Logger;
 import org.hibernate.HibernateException;
+import org.hibernate.LockMode;
 import org.hibernate.query.Query;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.Transaction;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
 import org.hibernate.query.NativeQuery;
-import org.w3c.dom.Document;
 import org.w3c.dom.Element;
-import org.xml.sax.SAXException;
 
 /**
- * Data Access Object for the Transcript table.
+ * Data Access Object for the Transcript table. It is the TranscriptSink that
+ * stores the transcripts read by a TranscriptReader in the database.
  *
  * @author Paul Wolfgang
  */
-public class TranscriptDAO {
+public class TranscriptDAO implements TranscriptSink {
 
     private static final Logger LOGGER = Logger.getLogger(TranscriptDAO.class);
+    /** The number of times a transaction is tried when there is lock contention */
+    private static final int MAX_ATTEMPTS = 5;
+    /** Locks guarding the creation of reference data, shared by all instances */
+    private static final StripedLocks REFERENCE_DATA_LOCKS = new StripedLocks(64);
+    /** The least time between progress messages */
+    private static final long PROGRESS_INTERVAL_MILLIS = 10_000;
     private final SessionFactory sessionFactory;
     private Session dbSession;
     private final Integer fileID;
     private final Integer tableID;
+    private ReferenceDataCache referenceDataCache;
+    private LoadGovernor loadGovernor;
+    private HearingRollups.Changes rollupChanges;
+    private boolean replaceExisting;
+    private boolean exitOnFailure = true;
+    /** The file being loaded, recorded in the TranscriptEvents */
+    private String source;
+    private LoadProgress progress;
+    private final List<Transcript> pendingTranscripts = new ArrayList<>();
+    private final List<String> committedIds = new ArrayList<>();
 
     /**
      * Constructor. 
@@ -60,65 +73,268 @@ public class TranscriptDAO {
         this.tableID = tableID;
     }
 
+    /**
+     * Sets the cache used to look up reference data. The cache may be shared
+     * with other TranscriptDAO objects. If no cache is set every lookup goes
+     * to the database.
+     *
+     * @param referenceDataCache The cache, or null
+     */
+    public void setReferenceDataCache(ReferenceDataCache referenceDataCache) {
+        this.referenceDataCache = referenceDataCache;
+    }
+
+    /**
+     * Sets the governor that chooses the number of transcripts committed per
+     * transaction. It only sizes the batches; it does not limit how many
+     * transactions run at once. If no governor is set each transcript is
+     * committed as it is inserted.
+     *
+     * @param loadGovernor The governor, or null
+     */
+    public void setLoadGovernor(LoadGovernor loadGovernor) {
+        this.loadGovernor = loadGovernor;
+    }
+
+    /**
+     * Sets the summary tables to be maintained as transcripts are inserted.
+     * The summary rows are updated in the same transaction as the
+     * transcripts. If no rollups are set the summary tables are not changed.
+     *
+     * @param rollups The summary tables, or null
+     */
+    public void setHearingRollups(HearingRollups rollups) {
+        this.rollupChanges = rollups == null ? null : rollups.newChanges();
+    }
+
+    /**
+     * Sets whether a transcript whose ID is already in the database replaces
+     * the existing transcript, e.g. when loading the changes found by
+     * TranscriptDiff. The existing transcript, its witnesses, and its bill and
+     * committee links are deleted in the same transaction. Otherwise the
+     * insert fails with a duplicate key.
+     *
+     * @param replaceExisting true to replace existing transcripts
+     */
+    public void setReplaceExisting(boolean replaceExisting) {
+        this.replaceExisting = replaceExisting;
+    }
+
+    /**
+     * Sets whether a transaction that cannot be committed ends the process,
+     * which is the default, or is rolled back and reported to the caller of
+     * loadDocument as a HibernateException. A caller that loads files for
+     * others, such as a web application, should not exit.
+     *
+     * @param exitOnFailure false to throw instead of exiting
+     */
+    public void setExitOnFailure(boolean exitOnFailure) {
+        this.exitOnFailure = exitOnFailure;
+    }
+
     /**
      * Loads the transcript XML file into the DOM tree.
      *
-     * @param fileName The name of the file containing the XML file.
+     * @param fileName The name of the file containing the XML file. A file
+     * whose name ends in .gz is decompressed.
+     * @return true if the whole document was loaded, false if it could not be
+     * read or parsed. getCommittedIds gives the transcripts that were loaded.
      */
-    public void loadDocument(String fileName) {
-        try {
-            LOGGER.info("Begin loading file " + fileName);
-            loadDocument(new FileInputStream(fileName));
-            LOGGER.info("Finished loading file " + fileName);
+    public boolean loadDocument(String fileName) {
+        LOGGER.info("Begin loading file " + fileName);
+        source = fileName;
+        try (InputStream in = XMLUtil.openInput(fileName)) {
+            return loadDocument(in);
         } catch (FileNotFoundException ex) {
             LOGGER.error("File " + fileName + " not found", ex);
+        } catch (IOException ex) {
+            LOGGER.error("Error reading " + fileName, ex);
         }
+        return false;
     }
 
     /**
      * Loads the transcript XML file into the DOM tree.
      *
      * @param in The input Stream
+     * @return true if the whole document was loaded, false if it could not be
+     * read or parsed. getCommittedIds gives the transcripts that were loaded.
      */
-    public void loadDocument(InputStream in) {
+    public boolean loadDocument(InputStream in) {
+        committedIds.clear();
+        dbSession = sessionFactory.openSession();
+        progress = new LoadProgress(source, PROGRESS_INTERVAL_MILLIS);
         try {
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            factory.setNamespaceAware(false);
-            factory.setValidating(false);
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            Document doc = builder.parse(in);
-            loadTranscripts(doc.getDocumentElement());
-        } catch (IOException | SAXException | ParserConfigurationException ex) {
+            new TranscriptReader().read(in, this, source);
+            progress.finish();
+            return true;
+        } catch (IOException ex) {
             LOGGER.fatal("Error Parsing ", ex);
+            return false;
+        } finally {
+            // A transaction left open by a failure is not returned to the
+            // connection pool
+            if (dbSession.getTransaction().isActive()) {
+                dbSession.getTransaction().rollback();
+            }
+            dbSession.close();
         }
+    }
 
+    /**
+     * @return The IDs of the transcripts committed by the last call of
+     * loadDocument, which may be fewer than the document contains if it
+     * failed part way
+     */
+    public List<String> getCommittedIds() {
+        return new ArrayList<>(committedIds);
     }
 
     /**
-     * Method to traverse the DOM tree and insert any transcript elements
-     * into the database
-     * 
-     * @param e Root element to be searched.
+     * Method to set the number of transcripts in the document for the
+     * progress messages.
+     *
+     * @param transcripts The number of transcripts
      */
-    private void loadTranscripts(Element e) {
-        dbSession = sessionFactory.openSession();
-        if (e.getNodeName().equals("transcript")) {
-            insertIntoDatabase(e);
-        } else {
-            XMLUtil.getChildElements(e).forEach((child) -> {
-                loadTranscripts(child);
-            });
-        }
-        dbSession.close();
+    @Override
+    public void begin(int transcripts) {
+        progress.setTotal(transcripts);
     }
+
     /**
-     * Method to insert an element (Transcript record) into the database
+     * Method to insert an element (Transcript record) into the database.
      *
      * @param e The DOM element representing a Transcript record
      */
     public void insertIntoDatabase(Element e) {
-        String insertIntoFileDocumentTemplate
-                = "insert into FileDocument values ('%s', %d, %d)";
+        write(TranscriptReader.parse(e));
+    }
+
+    /**
+     * Method to insert a parsed Transcript into the database. If a
+     * LoadGovernor has been set the transcript is added to the current batch,
+     * which is committed once it reaches the size chosen by the governor;
+     * otherwise it is committed immediately.
+     *
+     * @param transcript The Transcript as parsed by TranscriptReader
+     */
+    @Override
+    public void write(Transcript transcript) {
+        if (loadGovernor != null) {
+            pendingTranscripts.add(transcript);
+            if (pendingTranscripts.size() >= loadGovernor.getBatchSize()) {
+                commitPending();
+            }
+            return;
+        }
+        Transaction tx = dbSession.beginTransaction();
+        Transcript t = insertTranscript(transcript);
+        TranscriptSpan span = TranscriptSpan.commit();
+        try {
+            applyRollupChanges();
+            tx.commit();
+            span.end(source, t.getId(), 1, 1);
+            committedIds.add(t.getId());
+            progress.loaded(1);
+        } catch (Exception ex) {
+            if (!exitOnFailure) {
+                throw new HibernateException("Unable to commit " + t.getId(), ex);
+            }
+            System.err.println("Exception thrown " + ex);
+            System.err.println(t);
+            System.exit(1);
+        }
+        dbSession.clear();
+    }
+
+    /**
+     * Method to commit any transcripts that are still batched at the end of
+     * a document.
+     */
+    @Override
+    public void flush() {
+        commitPending();
+    }
+
+    /**
+     * Method to commit the transcripts batched by insertIntoDatabase. The
+     * batch is committed in transactions of the size chosen by the
+     * LoadGovernor. A transaction that fails because of a lock wait timeout or
+     * deadlock is rolled back and retried after a pause.
+     */
+    public void commitPending() {
+        int attempts = 0;
+        while (!pendingTranscripts.isEmpty()) {
+            List<Transcript> batch = pendingTranscripts.subList(0,
+                    Math.min(loadGovernor.getBatchSize(), pendingTranscripts.size()));
+            Transaction tx = null;
+            try {
+                tx = dbSession.beginTransaction();
+                for (Transcript transcript : batch) {
+                    insertTranscript(transcript);
+                }
+                TranscriptSpan span = TranscriptSpan.commit();
+                // The rows are written, and locked, when the session is
+                // flushed at commit, so only that is held to the budget
+                long start = System.nanoTime();
+                applyRollupChanges();
+                tx.commit();
+                long elapsed = System.nanoTime() - start;
+                span.end(source, batch.get(0).getId(), batch.size(), attempts + 1);
+                loadGovernor.onCommit(elapsed);
+                progress.loaded(batch.size());
+                batch.forEach((transcript) -> committedIds.add(transcript.getId()));
+                batch.clear();
+                dbSession.clear();
+                attempts = 0;
+            } catch (RuntimeException ex) {
+                if (tx != null && tx.isActive()) {
+                    tx.rollback();
+                }
+                if (rollupChanges != null) {
+                    rollupChanges.clear();
+                }
+                // The session cannot be used after a failed flush
+                dbSession.close();
+                dbSession = sessionFactory.openSession();
+                if (LoadGovernor.isContention(ex) && ++attempts <= MAX_ATTEMPTS) {
+                    pause(loadGovernor.onContention());
+                } else if (!exitOnFailure) {
+                    String message = "Unable to commit " + batch.size()
+                            + " transcripts starting with " + batch.get(0).getId();
+                    pendingTranscripts.clear();
+                    throw new HibernateException(message, ex);
+                } else {
+                    System.err.println("Exception thrown " + ex);
+                    batch.forEach((transcript) -> System.err.println("Transcript " + transcript.getId()));
+                    System.exit(1);
+                }
+            }
+        }
+    }
+
+    private void applyRollupChanges() {
+        if (rollupChanges != null) {
+            rollupChanges.apply(dbSession);
+        }
+    }
+
+    private static void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Method to insert a parsed Transcript into the database as part of the
+     * current transaction.
+     *
+     * @param parsed The Transcript as parsed by TranscriptReader
+     * @return The persistent Transcript
+     */
+    private Transcript insertTranscript(Transcript parsed) {
         Query<CommitteeAliases> houseCommitteeHqlQuery
                 = dbSession.createQuery("from CommitteeAliases c where c.ctyCode"
                         + " like '1%' and c.alternateName like :name",
@@ -127,150 +343,328 @@ public class TranscriptDAO {
                 = dbSession.createQuery("from CommitteeAliases c where c.ctyCode"
                         + " like '2%' and c.alternateName like :name",
                         CommitteeAliases.class);
-        Transaction tx = dbSession.beginTransaction();
-        Transcript t = XMLUtil.readElement(Transcript.class, e);
-        if (t.getHearingYear() != null && t.getHearingMonth() != null && t.getHearingDay() != null) {
-            LocalDate hearingDate = LocalDate.of(t.getHearingYear(), t.getHearingMonth(), t.getHearingDay());
-            t.setHearingDate(Date.from(hearingDate.atStartOfDay().toInstant(ZoneOffset.UTC)));
-        } else {
-            t.setHearingDate(null);
+        // The parsed objects are copied so that they can be inserted again
+        // if the transaction is retried.
+        Transcript t = new Transcript(parsed.getId(), parsed.getYear(), parsed.getNumber(),
+                parsed.getBudgetRelated(), parsed.getHearingYear(), parsed.getHearingMonth(),
+                parsed.getHearingDay(), parsed.getHearingDate(), parsed.getHearingLocation(),
+                parsed.getPages(), parsed.getReceivedYear(), parsed.getReceivedMonth(),
+                parsed.getReceviedDay(), parsed.getReceivedDate(), parsed.getComments(),
+                parsed.getDatePresentedToHouse(), parsed.getSummary(), parsed.getHasAudio(),
+                parsed.getAudioNotes(), parsed.getHasVideo(), parsed.getVideoNotes(),
+                parsed.getTranscriptURL());
+        String transcriptID = t.getId();
+        if (replaceExisting) {
+            deleteExisting(transcriptID);
         }
-        if (t.getReceivedYear() != null && t.getReceivedMonth() != null && t.getReceviedDay() != null) {
-            LocalDate receivedDate = LocalDate.of(t.getReceivedYear(), t.getReceivedMonth(), t.getReceviedDay());
-            t.setReceivedDate(Date.from(receivedDate.atStartOfDay().toInstant(ZoneOffset.UTC)));
-        } else {
-            t.setReceivedDate(null);
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Inserting " + transcriptID);
         }
-        
-        t.setId(e.getAttribute("id"));
-        String transcriptID = t.getId();
-        LOGGER.info("Inserting " + transcriptID);
         dbSession.save(t);
-        Element bills = XMLUtil.getChildElement(e, "bills");
-        if (bills != null) {
+        if (parsed.getBills() != null) {
+            TranscriptSpan span = TranscriptSpan.bills();
             t.setBills(new HashSet<>());
-            XMLUtil.getChildElements(bills)
-                    .stream()
-                    .map((billIDElement) -> billIDElement.getAttribute("id"))
-                    .map((billIDString) -> {
-                        BillID billID = dbSession.get(BillID.class, billIDString);
-                        if (billID == null) {
-                            billID = new BillID(billIDString);
-                            dbSession.save(billID);
-                        }
-                        return billID;
-                    })
-                    .map((billID) -> {
-                        t.getBills().add(billID);
-                        return billID;
-                    })
-                    .forEachOrdered((billID) -> {
-                        billID.getTranscripts().add(t);
-                    });
+            String[] billIDStrings = new String[parsed.getBills().size()];
+            int i = 0;
+            for (BillID billID : parsed.getBills()) {
+                billIDStrings[i++] = billID.getBillID();
+            }
+            // A consistent order keeps concurrent loads from deadlocking
+            Arrays.sort(billIDStrings);
+            for (String billIDString : billIDStrings) {
+                BillID billID = getOrCreateBill(billIDString);
+                t.getBills().add(billID);
+                billID.getTranscripts().add(t);
+            }
+            span.end(source, transcriptID, billIDStrings.length, 0);
         }
-        Element committees = XMLUtil.getChildElement(e, "committees");
-        if (committees != null) {
+        if (parsed.getCommittees() != null) {
+            TranscriptSpan span = TranscriptSpan.committees();
             t.setCommittees(new HashSet<>());
-            XMLUtil.getChildElements(committees)
-                    .stream()
-                    .map((committee) -> committee.getTextContent().trim())
-                    .map((committeeAliasName) -> expandAmpersand(committeeAliasName))
-                    .forEachOrdered((committeeAliasName) -> {
-                        if (committeeAliasName.startsWith("Senate")) {
-                            committeeAliasName = committeeAliasName.substring(7);
-                            insertCommittee(senateCommitteeHqlQuery, 2, committeeAliasName, dbSession, t);
-                        } else {
-                            insertCommittee(houseCommitteeHqlQuery, 1, committeeAliasName, dbSession, t);
-                        }
-                    });
+            int created = 0;
+            for (CommitteeAliases committee : parsed.getCommittees()) {
+                boolean wasCreated;
+                if (Short.valueOf((short) 2).equals(committee.getChamber())) {
+                    wasCreated = insertCommittee(senateCommitteeHqlQuery, 2, committee.getAlternateName(), dbSession, t);
+                } else {
+                    wasCreated = insertCommittee(houseCommitteeHqlQuery, 1, committee.getAlternateName(), dbSession, t);
+                }
+                if (wasCreated) {
+                    created++;
+                }
+            }
+            span.end(source, transcriptID, parsed.getCommittees().size(), created);
         }
-        Element witnesses = XMLUtil.getChildElement(e, "witnesses");
-        if (witnesses != null) {
+        if (parsed.getWitnesses() != null) {
             t.setWitnesses(new HashSet<>());
-            XMLUtil.getChildElements(witnesses)
-                    .stream()
-                    .map((witness) -> XMLUtil.readElement(Witness.class, witness))
-                    .map((elementWitness) -> {
-                        dbSession.save(elementWitness);
-                        return elementWitness;
-                    })
-                    .map((elementWitness) -> {
-                        t.getWitnesses().add(elementWitness);
-                        return elementWitness;
-                    })
-                    .forEachOrdered((elementWitness) -> {
-                        elementWitness.setTranscript(t);
-                    });
+            for (Witness witness : parsed.getWitnesses()) {
+                Witness elementWitness = new Witness(witness.getSalutation(), witness.getFirstName(),
+                        witness.getMiddleName(), witness.getSuffix(), witness.getLastName(),
+                        witness.getTitle(), witness.getTestimonyURL());
+                dbSession.save(elementWitness);
+                t.getWitnesses().add(elementWitness);
+                elementWitness.setTranscript(t);
+            }
         }
         if (fileID != null) {
-            String insertIntoFileDocumentQuery =
-                    String.format(insertIntoFileDocumentTemplate, t.getId(), tableID, fileID);
-            LOGGER.info(insertIntoFileDocumentQuery);
-            dbSession.createNativeQuery(insertIntoFileDocumentQuery).executeUpdate();
+            dbSession.createNativeQuery("insert into FileDocument values (:documentID, :tableID, :fileID)")
+                    .setParameter("documentID", t.getId())
+                    .setParameter("tableID", tableID)
+                    .setParameter("fileID", fileID)
+                    .executeUpdate();
         }
-        try {
-            tx.commit();
-        } catch (Exception ex) {
-            System.err.println("Exception thrown " + ex);
-            System.err.println(t);
-            System.exit(1);
+        if (rollupChanges != null) {
+            rollupChanges.record(t);
+        }
+        return t;
+    }
+
+    /**
+     * Method to delete a transcript, if it exists, as part of the current
+     * transaction. The session is flushed and cleared first so that the
+     * deleted rows are not written back from the session.
+     *
+     * @param transcriptID The transcript ID
+     */
+    private void deleteExisting(String transcriptID) {
+        Transcript existing = dbSession.get(Transcript.class, transcriptID);
+        if (existing == null) {
+            return;
+        }
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Replacing " + transcriptID);
+        }
+        dbSession.flush();
+        dbSession.clear();
+        String transcriptTable = tableName(Transcript.class);
+        String catalogPrefix = transcriptTable.substring(0, transcriptTable.lastIndexOf('.') + 1);
+        if (rollupChanges != null) {
+            // The bills mapped on Transcript are not keyed by the transcript
+            // ID, so they are read from the join table into the detached copy.
+            existing.setBills(new HashSet<>());
+            List<?> billIDs = dbSession.createNativeQuery("select BillID from " + catalogPrefix
+                    + "Transcript_BillID where TranscriptID = :id")
+                    .setParameter("id", transcriptID)
+                    .list();
+            for (Object billID : billIDs) {
+                existing.getBills().add(new BillID((String) billID));
+            }
+            rollupChanges.remove(existing);
+        }
+        String[] deletes = {
+            "delete from " + tableName(Witness.class) + " where TranscriptID = :id",
+            "delete from " + catalogPrefix + "Transcript_BillID where TranscriptID = :id",
+            "delete from " + catalogPrefix + "Transcript_Committee where transcriptID = :id",
+            "delete from " + transcriptTable + " where ID = :id"
+        };
+        for (String delete : deletes) {
+            dbSession.createNativeQuery(delete).setParameter("id", transcriptID).executeUpdate();
         }
     }
 
     /**
      * Method to insert a Committee into the Transcript object. If this
-     * committee name is not currently in the database it is added to the
-     * database
+     * committee name is not currently in the database it is matched using the
+     * CommitteeNameIndex of the ReferenceDataCache, if there is one, and
+     * otherwise added to the database
      *
      * @param committeeHqlQuery Query to search for the committee name
      * @param chamber Chamber 1 for House, 2 for Senate
      * @param committeeAliasName The committee name
      * @param dbSession Hibernate Database Session
      * @param t Transcript object
+     * @return true if an alias was created for the committee name
      * @throws HibernateException If an error occurs.
      */
-    private void insertCommittee(Query<CommitteeAliases> committeeHqlQuery, int chamber,
+    private boolean insertCommittee(Query<CommitteeAliases> committeeHqlQuery, int chamber,
             String committeeAliasName, Session dbSession, Transcript t)
             throws HibernateException {
+        if (referenceDataCache != null) {
+            Short cachedID = referenceDataCache.getCommitteeID(chamber, committeeAliasName);
+            if (cachedID != null) {
+                CommitteeAliases committeeAlias = dbSession.get(CommitteeAliases.class, cachedID);
+                if (committeeAlias != null
+                        && committeeAliasName.equalsIgnoreCase(committeeAlias.getAlternateName())) {
+                    t.getCommittees().add(committeeAlias);
+                    committeeAlias.getTranscripts().add(t);
+                    return false;
+                }
+                // Deleted or renumbered since it was cached
+                LOGGER.warn("Cached committee ID " + cachedID + " for " + committeeAliasName
+                        + " is no longer valid");
+                referenceDataCache.removeCommitteeID(chamber, committeeAliasName);
+            }
+        }
         committeeHqlQuery.setParameter("name", committeeAliasName);
         List<CommitteeAliases> list = committeeHqlQuery.list();
-        if (list.isEmpty()) {
-            CommitteeAliases newCommitteeAlias = new CommitteeAliases();
-            newCommitteeAlias.setCtyCode((short) (chamber * 100 + 99));
-            newCommitteeAlias.setChamber((short) chamber);
-            newCommitteeAlias.setAlternateName(committeeAliasName);
-            if (chamber == 1) {
-                newCommitteeAlias.setName("Other House Committee");
-            } else {
-                newCommitteeAlias.setName("Other Senate Committee");
+        CommitteeNameIndex.Match match = null;
+        if (list.isEmpty() && referenceDataCache != null && referenceDataCache.getCommitteeNameIndex() != null) {
+            match = referenceDataCache.getCommitteeNameIndex()
+                    .find(chamber, committeeAliasName, t.getHearingYear());
+        }
+        if (match != null) {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Matched committee " + match);
             }
-            newCommitteeAlias.setStartYear((short) 0);
-            newCommitteeAlias.setEndYear((short) 9999);
-            Serializable committeeID = dbSession.save(newCommitteeAlias);
+            CommitteeAliases committeeAlias = dbSession.get(CommitteeAliases.class, match.getId());
+            t.getCommittees().add(committeeAlias);
+            committeeAlias.getTranscripts().add(t);
+            // Not cached: the match depends on the hearing year, so each
+            // transcript with this name is matched against its own year
+            return false;
+        } else if (list.isEmpty()) {
+            short committeeID = getOrCreateCommitteeAlias(committeeHqlQuery.getQueryString(),
+                    chamber, committeeAliasName);
+            // A locking read sees the latest committed row even if it was
+            // created after this transaction's snapshot was taken.
+            CommitteeAliases newCommitteeAlias
+                    = dbSession.get(CommitteeAliases.class, committeeID, LockMode.PESSIMISTIC_READ);
             t.getCommittees().add(newCommitteeAlias);
             newCommitteeAlias.getTranscripts().add(t);
+            if (referenceDataCache != null) {
+                referenceDataCache.putCommitteeID(chamber, committeeAliasName, committeeID);
+            }
+            return true;
         } else {
             try {
                 t.getCommittees().add(list.get(0));
                 list.get(0).getTranscripts().add(t);
+                if (referenceDataCache != null) {
+                    referenceDataCache.putCommitteeID(chamber, committeeAliasName, list.get(0).getId());
+                }
             } catch (Throwable tr) {
                 System.err.println(tr);
             }
+            return false;
         }
     }
 
     /**
-     * Method to replace ampersand characters with the word and.
+     * Method to get the BillID with the given ID, adding it to the database if
+     * it is not there. The row is added with INSERT ... ON DUPLICATE KEY so that
+     * two loads adding the same bill at the same time do not fail with a
+     * duplicate key; the second waits for the first to commit.
      *
-     * @param s String to be processed
-     * @return String with any occurrence of &amp; replaced with &quot;and&quot;
+     * @param billIDString The bill ID
+     * @return The BillID
      */
-    private static String expandAmpersand(String s) {
-        StringBuilder stb = new StringBuilder(s);
-        int index;
-        while ((index = stb.indexOf("&")) != -1) {
-            stb.replace(index, index + 1, "and");
+    private BillID getOrCreateBill(String billIDString) {
+        BillID billID = dbSession.get(BillID.class, billIDString);
+        if (billID == null) {
+            dbSession.createNativeQuery("insert into " + tableName(BillID.class)
+                    + " (billID) values (:billID) on duplicate key update billID = billID")
+                    .setParameter("billID", billIDString)
+                    .executeUpdate();
+            billID = dbSession.get(BillID.class, billIDString, LockMode.PESSIMISTIC_READ);
         }
-        return stb.toString();
+        return billID;
+    }
+
+    /**
+     * Method to get the ID of the CommitteeAliases record for a committee name
+     * that was not found, creating an "Other House/Senate Committee" record if
+     * it does not exist. The check and insert are made under a lock striped on
+     * the chamber and name, in a separate transaction that is committed
+     * immediately, so that concurrent loads in this process see the new record
+     * rather than each adding their own. The insert uses ON DUPLICATE KEY so
+     * that, given the unique key checked by hasCommitteeAliasKey, loads in
+     * other processes get the existing record as well. Because it is
+     * committed separately, the record remains if the transaction of the
+     * transcript that needed it is rolled back, and is reused by the next
+     * transcript with that committee name.
+     *
+     * @param hqlQuery The query used to search for the committee name
+     * @param chamber Chamber 1 for House, 2 for Senate
+     * @param committeeAliasName The committee name
+     * @return The ID of the CommitteeAliases record
+     */
+    private short getOrCreateCommitteeAlias(String hqlQuery, int chamber, String committeeAliasName) {
+        Lock lock = REFERENCE_DATA_LOCKS.get(chamber + ":"
+                + committeeAliasName.trim().toLowerCase().replaceAll("\\s+", " "));
+        lock.lock();
+        try (Session session = sessionFactory.openSession()) {
+            Transaction tx = session.beginTransaction();
+            try {
+                List<CommitteeAliases> list = session.createQuery(hqlQuery, CommitteeAliases.class)
+                        .setParameter("name", committeeAliasName)
+                        .list();
+                short committeeID;
+                if (!list.isEmpty()) {
+                    committeeID = list.get(0).getId();
+                } else {
+                    session.createNativeQuery("insert into " + tableName(CommitteeAliases.class)
+                            + " (CtyCode, AlternateName, StartYear, EndYear, Chamber, Name)"
+                            + " values (:ctyCode, :alternateName, 0, 9999, :chamber, :name)"
+                            + " on duplicate key update ID = last_insert_id(ID)")
+                            .setParameter("ctyCode", chamber * 100 + 99)
+                            .setParameter("alternateName", committeeAliasName)
+                            .setParameter("chamber", chamber)
+                            .setParameter("name", chamber == 1
+                                    ? "Other House Committee" : "Other Senate Committee")
+                            .executeUpdate();
+                    committeeID = ((Number) session.createNativeQuery("select last_insert_id()")
+                            .uniqueResult()).shortValue();
+                }
+                tx.commit();
+                return committeeID;
+            } catch (RuntimeException ex) {
+                if (tx.isActive()) {
+                    tx.rollback();
+                }
+                throw ex;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Method to determine if the CommitteeAliases table has a unique key on
+     * Chamber and AlternateName (with at most StartYear and EndYear added).
+     * Without it, loads running in different processes can each add an
+     * alias for the same new committee name.
+     *
+     * @param factory The SessionFactory
+     * @return true if the key exists
+     */
+    public static boolean hasCommitteeAliasKey(SessionFactory factory) {
+        String table = tableName(factory, CommitteeAliases.class);
+        int dot = table.lastIndexOf('.');
+        try (Session session = factory.openSession()) {
+            NativeQuery<?> query = session.createNativeQuery("select INDEX_NAME from information_schema.STATISTICS"
+                    + " where TABLE_SCHEMA = " + (dot < 0 ? "database()" : ":schema")
+                    + " and TABLE_NAME = :table and NON_UNIQUE = 0 group by INDEX_NAME"
+                    + " having sum(COLUMN_NAME in ('Chamber', 'AlternateName')) = 2"
+                    + " and sum(COLUMN_NAME not in ('Chamber', 'AlternateName', 'StartYear', 'EndYear')) = 0")
+                    .setParameter("table", table.substring(dot + 1));
+            if (dot >= 0) {
+                query.setParameter("schema", table.substring(0, dot));
+            }
+            return !query.list().isEmpty();
+        }
+    }
+
+    /**
+     * Method to get the qualified name of the table an entity is mapped to,
+     * for use in native SQL.
+     *
+     * @param entityClass The entity class
+     * @return The table name including the catalog
+     */
+    private String tableName(Class<?> entityClass) {
+        return tableName(sessionFactory, entityClass);
+    }
+
+    /**
+     * Method to get the qualified name of the table an entity is mapped to,
+     * for use in native SQL.
+     *
+     * @param factory The SessionFactory
+     * @param entityClass The entity class
+     * @return The table name including the catalog
+     */
+    static String tableName(SessionFactory factory, Class<?> entityClass) {
+        return ((AbstractEntityPersister) factory.unwrap(SessionFactoryImplementor.class)
+                .getMetamodel().entityPersister(entityClass)).getTableName();
     }
 }
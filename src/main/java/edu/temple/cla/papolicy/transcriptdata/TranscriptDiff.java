@@ -0,0 +1,432 @@
+package edu.temple.cla.papolicy.transcriptdata;
+
+import edu.temple.cla.papolicy.xmlutil.XMLUtil;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import org.apache.log4j.Logger;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Compares two transcript XML files, such as successive cumulative files
+ * published by the House, without using the database. Transcripts are matched
+ * by ID and compared after being parsed by TranscriptReader, so differences in
+ * layout or element order that do not change the data are not reported.
+ * <p>
+ * Memory is bounded by splitting the files in two streaming passes. First
+ * each file is split by a hash of the transcript ID into partition files in a
+ * work directory. Then each partition of the old file is read into a map and
+ * the matching partition of the new file is streamed against it. The number
+ * of partitions is chosen so that a partition holds about partitionBytes of
+ * XML. At most MAX_OPEN_PARTITIONS files are written at once; when more
+ * partitions are needed each file is first split into groups of partitions,
+ * and each group is then split into its partitions.
+ * <p>
+ * The added and changed transcripts are written unchanged to the delta file,
+ * which can be loaded with TranscriptDAO in place of the new file (replacing
+ * the changed transcripts). The report has one tab separated line for each
+ * added or removed transcript and for each changed field:
+ * <pre>
+ * added    id
+ * removed  id
+ * changed  id  field  old value  new value
+ * </pre>
+ * The fields are the transcript properties and bills, committees, and
+ * witnesses, which are compared as a whole. Transcripts are reported in
+ * partition order, not document order.
+ *
+ * @author Paul Wolfgang
+ */
+public class TranscriptDiff {
+
+    private static final Logger LOGGER = Logger.getLogger(TranscriptDiff.class);
+    /** Rough ratio of XML to gzip compressed XML, used to estimate file sizes. */
+    private static final int COMPRESSION_RATIO = 8;
+    /** The most partition files open at one time, well under the usual limit of 1024 descriptors. */
+    private static final int MAX_OPEN_PARTITIONS = 64;
+    /** The most partitions that can be made with a two level split. */
+    private static final int MAX_PARTITIONS = MAX_OPEN_PARTITIONS * MAX_OPEN_PARTITIONS;
+
+    private final Path workDirectory;
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+    private long partitionBytes = 16L << 20;
+    private int added;
+    private int removed;
+    private int changed;
+    private int unchanged;
+
+    /**
+     * Receives each transcript element read from a document.
+     */
+    private interface ElementHandler {
+
+        void accept(Element e) throws IOException, XMLStreamException;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param workDirectory The directory in which the partition files are
+     * created. They are deleted when the comparison is done.
+     */
+    public TranscriptDiff(Path workDirectory) {
+        this.workDirectory = workDirectory;
+    }
+
+    /**
+     * @param partitionBytes The approximate size of the XML read into memory
+     * at one time
+     */
+    public void setPartitionBytes(long partitionBytes) {
+        this.partitionBytes = Math.max(1, partitionBytes);
+    }
+
+    /**
+     * Method to compare two transcript XML files. Files whose names end in
+     * .gz are decompressed, and the delta file is compressed if its name ends
+     * in .gz.
+     *
+     * @param oldFile The earlier file
+     * @param newFile The later file
+     * @param deltaFile The file to receive the added and changed transcripts
+     * @param report The writer to receive the change list
+     * @throws IOException If a file cannot be read or written
+     */
+    public void diff(File oldFile, File newFile, File deltaFile, Writer report) throws IOException {
+        long start = System.currentTimeMillis();
+        added = removed = changed = unchanged = 0;
+        long wanted = Math.max(estimateSize(oldFile), estimateSize(newFile)) / partitionBytes + 1;
+        if (wanted > MAX_PARTITIONS) {
+            LOGGER.warn("Using " + MAX_PARTITIONS + " partitions instead of " + wanted
+                    + "; partitions will be larger than " + partitionBytes + " bytes");
+        }
+        int partitions = (int) Math.min(MAX_PARTITIONS, wanted);
+        Path directory = Files.createTempDirectory(workDirectory, "diff");
+        try {
+            Path[] oldPartitions = split(oldFile, directory.resolve("old"), partitions);
+            Path[] newPartitions = split(newFile, directory.resolve("new"), partitions);
+            try (OutputStream out = XMLUtil.openOutput(deltaFile.getPath())) {
+                XMLStreamWriter delta = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+                delta.writeStartDocument("UTF-8", "1.0");
+                delta.writeCharacters("\n");
+                delta.writeStartElement("transcripts");
+                for (int i = 0; i < partitions; i++) {
+                    compare(oldPartitions[i], newPartitions[i], delta, report);
+                }
+                delta.writeCharacters("\n");
+                delta.writeEndElement();
+                delta.writeCharacters("\n");
+                delta.writeEndDocument();
+                delta.flush();
+            } catch (XMLStreamException ex) {
+                throw new IOException("Error writing " + deltaFile, ex);
+            }
+            report.flush();
+        } finally {
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(directory);
+        }
+        LOGGER.info("Compared " + oldFile + " with " + newFile + " in " + partitions + " partitions, "
+                + (System.currentTimeMillis() - start) + " ms: " + added + " added, " + removed
+                + " removed, " + changed + " changed, " + unchanged + " unchanged");
+    }
+
+    /**
+     * @return The number of transcripts only in the new file
+     */
+    public int getAdded() {
+        return added;
+    }
+
+    /**
+     * @return The number of transcripts only in the old file
+     */
+    public int getRemoved() {
+        return removed;
+    }
+
+    /**
+     * @return The number of transcripts in both files that differ
+     */
+    public int getChanged() {
+        return changed;
+    }
+
+    /**
+     * @return The number of transcripts in both files that are the same
+     */
+    public int getUnchanged() {
+        return unchanged;
+    }
+
+    private static long estimateSize(File file) {
+        return file.getName().endsWith(".gz") ? file.length() * COMPRESSION_RATIO : file.length();
+    }
+
+    /**
+     * Method to split a transcript XML file into partition files by the hash
+     * of the transcript ID. If there are more than MAX_OPEN_PARTITIONS
+     * partitions the file is split into groups of consecutive partitions
+     * first, and each group file is split in turn and then deleted.
+     *
+     * @param file The file to be split
+     * @param prefix The path of the partition files without their number
+     * @param partitions The number of partitions
+     * @return The partition files
+     */
+    private static Path[] split(File file, Path prefix, int partitions) throws IOException {
+        if (partitions <= MAX_OPEN_PARTITIONS) {
+            try (InputStream in = XMLUtil.openInput(file.getPath())) {
+                return split(in, file.getName(), prefix, 0, partitions, id -> partition(id, partitions));
+            }
+        }
+        int groupSize = (partitions + MAX_OPEN_PARTITIONS - 1) / MAX_OPEN_PARTITIONS;
+        int groupCount = (partitions + groupSize - 1) / groupSize;
+        Path[] groups;
+        try (InputStream in = XMLUtil.openInput(file.getPath())) {
+            groups = split(in, file.getName(), prefix.resolveSibling(prefix.getFileName() + "-group"),
+                    0, groupCount, id -> partition(id, partitions) / groupSize);
+        }
+        Path[] paths = new Path[partitions];
+        for (int group = 0; group < groupCount; group++) {
+            int first = group * groupSize;
+            int count = Math.min(groupSize, partitions - first);
+            try (InputStream in = XMLUtil.openInput(groups[group].toString())) {
+                System.arraycopy(split(in, groups[group].getFileName().toString(), prefix, first, count,
+                        id -> partition(id, partitions) - first), 0, paths, first, count);
+            }
+            Files.delete(groups[group]);
+        }
+        return paths;
+    }
+
+    /**
+     * Method to write the transcripts of a document to count files.
+     *
+     * @param in The document
+     * @param source The name of the document for error messages
+     * @param prefix The path of the files without their number
+     * @param first The number of the first file
+     * @param count The number of files
+     * @param target Function from transcript ID to the index (0 to count - 1)
+     * of the file to receive the transcript
+     * @return The files
+     */
+    private static Path[] split(InputStream in, String source, Path prefix, int first, int count,
+            ToIntFunction<String> target) throws IOException {
+        Path[] paths = new Path[count];
+        OutputStream[] streams = new OutputStream[count];
+        XMLStreamWriter[] writers = new XMLStreamWriter[count];
+        try {
+            XMLOutputFactory factory = XMLOutputFactory.newInstance();
+            for (int i = 0; i < count; i++) {
+                paths[i] = prefix.resolveSibling(prefix.getFileName() + "-" + (first + i) + ".xml");
+                streams[i] = new BufferedOutputStream(Files.newOutputStream(paths[i]), 1 << 13);
+                writers[i] = factory.createXMLStreamWriter(streams[i], "UTF-8");
+                writers[i].writeStartDocument("UTF-8", "1.0");
+                writers[i].writeStartElement("transcripts");
+            }
+            readTranscripts(in, source, e -> XMLUtil.writeElement(
+                    writers[target.applyAsInt(e.getAttribute("id"))], e));
+            for (XMLStreamWriter writer : writers) {
+                writer.writeEndElement();
+                writer.writeEndDocument();
+                writer.close();
+            }
+        } catch (XMLStreamException ex) {
+            throw new IOException("Error splitting " + source, ex);
+        } finally {
+            for (OutputStream stream : streams) {
+                if (stream != null) {
+                    stream.close();
+                }
+            }
+        }
+        return paths;
+    }
+
+    private static int partition(String id, int partitions) {
+        return Math.floorMod(id.hashCode(), partitions);
+    }
+
+    /**
+     * Method to compare a partition of the old file with the matching
+     * partition of the new file.
+     */
+    private void compare(Path oldPartition, Path newPartition, XMLStreamWriter delta, Writer report)
+            throws IOException, XMLStreamException {
+        Map<String, Transcript> oldTranscripts = new HashMap<>();
+        try (InputStream in = Files.newInputStream(oldPartition)) {
+            readTranscripts(in, oldPartition.toString(), e -> {
+                Transcript t = TranscriptReader.parse(e);
+                oldTranscripts.put(t.getId(), t);
+            });
+        }
+        try (InputStream in = Files.newInputStream(newPartition)) {
+            readTranscripts(in, newPartition.toString(), e -> {
+                Transcript t = TranscriptReader.parse(e);
+                Transcript old = oldTranscripts.remove(t.getId());
+                if (old == null) {
+                    added++;
+                    report.append("added\t").append(t.getId()).append('\n');
+                } else {
+                    List<String[]> changes = changes(old, t);
+                    if (changes.isEmpty()) {
+                        unchanged++;
+                        return;
+                    }
+                    changed++;
+                    for (String[] change : changes) {
+                        report.append("changed\t").append(t.getId());
+                        for (String s : change) {
+                            report.append('\t').append(s);
+                        }
+                        report.append('\n');
+                    }
+                }
+                delta.writeCharacters("\n  ");
+                XMLUtil.writeElement(delta, e);
+            });
+        }
+        for (String id : new TreeSet<>(oldTranscripts.keySet())) {
+            removed++;
+            report.append("removed\t").append(id).append('\n');
+        }
+    }
+
+    /**
+     * Method to list the fields that differ between two versions of a
+     * transcript.
+     *
+     * @param before The old version
+     * @param after The new version
+     * @return The field name, old value, and new value of each difference
+     */
+    private List<String[]> changes(Transcript before, Transcript after) {
+        List<String[]> changes = new ArrayList<>();
+        Object[] beforeValues = TranscriptColumns.values(before);
+        Object[] afterValues = TranscriptColumns.values(after);
+        for (int i = 0; i < beforeValues.length; i++) {
+            if (!Objects.equals(beforeValues[i], afterValues[i])) {
+                changes.add(new String[]{TranscriptColumns.TRANSCRIPT[i],
+                    text(beforeValues[i]), text(afterValues[i])});
+            }
+        }
+        addChange(changes, "bills", bills(before), bills(after));
+        addChange(changes, "committees", committees(before), committees(after));
+        addChange(changes, "witnesses", witnesses(before), witnesses(after));
+        return changes;
+    }
+
+    private static void addChange(List<String[]> changes, String field, List<String> before, List<String> after) {
+        if (!before.equals(after)) {
+            changes.add(new String[]{field, clean(String.join("; ", before)), clean(String.join("; ", after))});
+        }
+    }
+
+    private static List<String> bills(Transcript t) {
+        TreeSet<String> bills = new TreeSet<>();
+        if (t.getBills() != null) {
+            t.getBills().forEach(billID -> bills.add(billID.getBillID()));
+        }
+        return new ArrayList<>(bills);
+    }
+
+    private static List<String> committees(Transcript t) {
+        TreeSet<String> committees = new TreeSet<>();
+        if (t.getCommittees() != null) {
+            t.getCommittees().forEach(committee -> committees.add(
+                    Short.valueOf((short) 2).equals(committee.getChamber())
+                    ? "Senate " + committee.getAlternateName() : committee.getAlternateName()));
+        }
+        return new ArrayList<>(committees);
+    }
+
+    /**
+     * The witnesses are compared in document order, each as its properties
+     * separated by '|'.
+     */
+    private static List<String> witnesses(Transcript t) {
+        List<String> witnesses = new ArrayList<>();
+        if (t.getWitnesses() != null) {
+            t.getWitnesses().forEach(witness -> {
+                Object[] values = TranscriptColumns.values(witness);
+                String[] text = new String[values.length];
+                Arrays.setAll(text, i -> values[i] == null ? "" : values[i].toString());
+                witnesses.add(String.join("|", text));
+            });
+        }
+        return witnesses;
+    }
+
+    private String text(Object value) {
+        if (value == null) {
+            return "";
+        }
+        return clean(value instanceof Date ? dateFormat.format((Date) value) : value.toString());
+    }
+
+    /**
+     * Method to keep a value on one line of the report.
+     */
+    private static String clean(String s) {
+        return s.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+
+    /**
+     * Method to read each transcript element of a document with a streaming
+     * parser. Only one transcript element is held in memory at a time.
+     */
+    private static void readTranscripts(InputStream in, String source, ElementHandler handler)
+            throws IOException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        try {
+            Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT
+                            && "transcript".equals(reader.getLocalName())) {
+                        handler.accept(XMLUtil.buildElement(reader, doc));
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException | ParserConfigurationException ex) {
+            throw new IOException("Error reading " + source, ex);
+        }
+    }
+
+}
@@ -0,0 +1,175 @@
+package edu.temple.cla.papolicy.transcriptdata;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events for the stages of loading a transcript file:
+ * parsing the document, mapping each transcript element, looking up its
+ * committees and bills, and committing. The events are recorded only when a
+ * recording is running (e.g. java -XX:StartFlightRecording=filename=load.jfr)
+ * and are otherwise close to free, so they are left in place. Stack traces
+ * are not taken. TranscriptTraceAnalyzer summarizes a recording.
+ * <p>
+ * The events require a JVM with Flight Recorder, which is included in
+ * OpenJDK 8u262 and later. They are created only through TranscriptSpan,
+ * which does not load this class on other JVMs.
+ *
+ * @author Paul Wolfgang
+ */
+public final class TranscriptEvents {
+
+    /** The prefix of the event names. */
+    static final String PREFIX = "edu.temple.cla.papolicy.";
+
+    private TranscriptEvents() {
+    }
+
+    static TranscriptSpan parse() {
+        return new EventSpan(new ParseEvent());
+    }
+
+    static TranscriptSpan mapping() {
+        return new EventSpan(new MappingEvent());
+    }
+
+    static TranscriptSpan committees() {
+        return new EventSpan(new CommitteeEvent());
+    }
+
+    static TranscriptSpan bills() {
+        return new EventSpan(new BillEvent());
+    }
+
+    static TranscriptSpan commit() {
+        return new EventSpan(new CommitEvent());
+    }
+
+    /**
+     * A span that times an event.
+     */
+    private static final class EventSpan extends TranscriptSpan {
+
+        private final TranscriptEvent event;
+
+        EventSpan(TranscriptEvent event) {
+            this.event = event;
+            event.begin();
+        }
+
+        @Override
+        void end(String file, String transcriptID, int count, int secondCount) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.file = file;
+                event.transcriptID = transcriptID;
+                event.setCounts(count, secondCount);
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Fields common to the transcript loading events.
+     */
+    @Category({"Transcript Loading"})
+    @StackTrace(false)
+    abstract static class TranscriptEvent extends Event {
+
+        @Label("File")
+        String file;
+
+        @Label("Transcript ID")
+        @Description("The transcript, or the first transcript of a batch")
+        String transcriptID;
+
+        void setCounts(int count, int secondCount) {
+        }
+    }
+
+    /**
+     * Parsing a document into a DOM tree.
+     */
+    @Name(PREFIX + "Parse")
+    @Label("Parse Document")
+    static class ParseEvent extends TranscriptEvent {
+    }
+
+    /**
+     * Mapping a transcript element to a Transcript with XMLUtil.readElement.
+     */
+    @Name(PREFIX + "Mapping")
+    @Label("Map Transcript")
+    static class MappingEvent extends TranscriptEvent {
+
+        @Label("Witnesses")
+        int witnesses;
+
+        @Override
+        void setCounts(int count, int secondCount) {
+            witnesses = count;
+        }
+    }
+
+    /**
+     * Looking up, and if necessary creating, the committees of a transcript.
+     */
+    @Name(PREFIX + "Committees")
+    @Label("Committee Lookup")
+    static class CommitteeEvent extends TranscriptEvent {
+
+        @Label("Committees")
+        int committees;
+
+        @Label("Created")
+        @Description("Committees not found, which were given an Other alias")
+        int created;
+
+        @Override
+        void setCounts(int count, int secondCount) {
+            committees = count;
+            created = secondCount;
+        }
+    }
+
+    /**
+     * Looking up, and if necessary creating, the bills of a transcript.
+     */
+    @Name(PREFIX + "Bills")
+    @Label("Bill Lookup")
+    static class BillEvent extends TranscriptEvent {
+
+        @Label("Bills")
+        int bills;
+
+        @Override
+        void setCounts(int count, int secondCount) {
+            bills = count;
+        }
+    }
+
+    /**
+     * Committing a transaction of one or more transcripts.
+     */
+    @Name(PREFIX + "Commit")
+    @Label("Commit")
+    static class CommitEvent extends TranscriptEvent {
+
+        @Label("Transcripts")
+        int transcripts;
+
+        @Label("Attempt")
+        int attempt;
+
+        @Override
+        void setCounts(int count, int secondCount) {
+            transcripts = count;
+            attempt = secondCount;
+        }
+    }
+
+}
@@ -0,0 +1,234 @@
+package edu.temple.cla.papolicy.transcriptdata;
+
+import edu.temple.cla.papolicy.xmlutil.XMLUtil;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import org.apache.log4j.Logger;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+
+/**
+ * Writes the transcripts in the database as a transcript XML document in the
+ * form read by TranscriptDAO.loadDocument. The transcripts are read a page at
+ * a time in ID order, each page starting after the last ID of the previous
+ * one (keyset pagination), and the bills, committees, and witnesses of a page
+ * are fetched with one query each over the same ID range. Only one page is
+ * held in memory, and the document is written with an XMLStreamWriter.
+ * <p>
+ * The derived hearingDate and receivedDate are not written, and empty bills,
+ * committees, and witnesses elements are omitted since they cannot be read
+ * back. Senate committees are written with the prefix "Senate ".
+ *
+ * @author Paul Wolfgang
+ */
+public class TranscriptExporter {
+
+    private static final Logger LOGGER = Logger.getLogger(TranscriptExporter.class);
+
+    private final SessionFactory sessionFactory;
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("M/d/yyyy");
+    private int pageSize = 500;
+
+    /**
+     * Constructor.
+     *
+     * @param factory The SessionFactory
+     */
+    public TranscriptExporter(SessionFactory factory) {
+        this.sessionFactory = factory;
+    }
+
+    /**
+     * @param pageSize The number of transcripts read per query
+     */
+    public void setPageSize(int pageSize) {
+        this.pageSize = Math.max(1, pageSize);
+    }
+
+    /**
+     * Method to export the transcripts to a file. If the file name ends in
+     * .gz the file is compressed with gzip.
+     *
+     * @param file The output file
+     * @return The number of transcripts written
+     * @throws IOException If the file cannot be written
+     */
+    public int export(File file) throws IOException {
+        try (OutputStream out = XMLUtil.openOutput(file.getPath())) {
+            return export(out);
+        }
+    }
+
+    /**
+     * Method to export the transcripts to an output stream. The stream is
+     * not closed.
+     *
+     * @param out The output stream
+     * @return The number of transcripts written
+     * @throws IOException If the document cannot be written
+     */
+    public int export(OutputStream out) throws IOException {
+        int count = 0;
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+            writer.writeStartDocument("UTF-8", "1.0");
+            writer.writeCharacters("\n");
+            writer.writeStartElement("transcripts");
+            String after = "";
+            List<Object[]> page;
+            while (!(page = readPage(session, after)).isEmpty()) {
+                String last = (String) page.get(page.size() - 1)[0];
+                Map<String, List<String>> bills = readBills(session, after, last);
+                Map<String, List<String>> committees = readCommittees(session, after, last);
+                Map<String, List<Object[]>> witnesses = readWitnesses(session, after, last);
+                for (Object[] row : page) {
+                    String id = (String) row[0];
+                    writeTranscript(writer, row, bills.get(id), committees.get(id), witnesses.get(id));
+                }
+                count += page.size();
+                after = last;
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Exported " + count + " transcripts through " + last);
+                }
+            }
+            writer.writeCharacters("\n");
+            writer.writeEndElement();
+            writer.writeCharacters("\n");
+            writer.writeEndDocument();
+            writer.flush();
+        } catch (XMLStreamException ex) {
+            throw new IOException("Error writing transcript XML", ex);
+        }
+        LOGGER.info("Exported " + count + " transcripts");
+        return count;
+    }
+
+    private List<Object[]> readPage(StatelessSession session, String after) {
+        StringBuilder hql = new StringBuilder("select t.id");
+        for (String field : TranscriptColumns.TRANSCRIPT) {
+            hql.append(", t.").append(field);
+        }
+        hql.append(" from Transcript t where t.id > :after order by t.id");
+        return session.createQuery(hql.toString(), Object[].class)
+                .setParameter("after", after)
+                .setMaxResults(pageSize)
+                .list();
+    }
+
+    private static Map<String, List<String>> readBills(StatelessSession session, String after, String last) {
+        Map<String, List<String>> result = new HashMap<>();
+        session.createQuery("select t.id, b.billID from BillID b join b.transcripts t"
+                + " where t.id > :after and t.id <= :last order by t.id, b.billID", Object[].class)
+                .setParameter("after", after)
+                .setParameter("last", last)
+                .list()
+                .forEach(row -> result.computeIfAbsent((String) row[0], (k) -> new ArrayList<>())
+                        .add((String) row[1]));
+        return result;
+    }
+
+    private static Map<String, List<String>> readCommittees(StatelessSession session, String after, String last) {
+        Map<String, List<String>> result = new HashMap<>();
+        session.createQuery("select t.id, c.alternateName, c.ctyCode, c.chamber"
+                + " from CommitteeAliases c join c.transcripts t"
+                + " where t.id > :after and t.id <= :last order by t.id, c.id", Object[].class)
+                .setParameter("after", after)
+                .setParameter("last", last)
+                .list()
+                .forEach(row -> {
+                    String name = (String) row[1];
+                    // TranscriptDAO looks up Senate committees by a CtyCode starting with 2
+                    boolean senate = row[2] != null
+                            ? row[2].toString().startsWith("2")
+                            : Short.valueOf((short) 2).equals(row[3]);
+                    result.computeIfAbsent((String) row[0], (k) -> new ArrayList<>())
+                            .add(senate ? "Senate " + name : name);
+                });
+        return result;
+    }
+
+    private static Map<String, List<Object[]>> readWitnesses(StatelessSession session, String after, String last) {
+        StringBuilder hql = new StringBuilder("select w.transcript.id");
+        for (String field : TranscriptColumns.WITNESS) {
+            hql.append(", w.").append(field);
+        }
+        hql.append(" from Witness w where w.transcript.id > :after and w.transcript.id <= :last"
+                + " order by w.transcript.id, w.id");
+        Map<String, List<Object[]>> result = new HashMap<>();
+        session.createQuery(hql.toString(), Object[].class)
+                .setParameter("after", after)
+                .setParameter("last", last)
+                .list()
+                .forEach(row -> result.computeIfAbsent((String) row[0], (k) -> new ArrayList<>()).add(row));
+        return result;
+    }
+
+    private void writeTranscript(XMLStreamWriter writer, Object[] row, List<String> bills,
+            List<String> committees, List<Object[]> witnesses) throws XMLStreamException {
+        writer.writeCharacters("\n  ");
+        writer.writeStartElement("transcript");
+        writer.writeAttribute("id", (String) row[0]);
+        writeFields(writer, TranscriptColumns.TRANSCRIPT, row, "\n    ");
+        if (bills != null) {
+            writer.writeCharacters("\n    ");
+            writer.writeStartElement("bills");
+            for (String billID : bills) {
+                writer.writeEmptyElement("bill");
+                writer.writeAttribute("id", billID);
+            }
+            writer.writeEndElement();
+        }
+        if (committees != null) {
+            writer.writeCharacters("\n    ");
+            writer.writeStartElement("committees");
+            for (String committee : committees) {
+                writer.writeStartElement("committee");
+                writer.writeCharacters(committee);
+                writer.writeEndElement();
+            }
+            writer.writeEndElement();
+        }
+        if (witnesses != null) {
+            writer.writeCharacters("\n    ");
+            writer.writeStartElement("witnesses");
+            for (Object[] witness : witnesses) {
+                writer.writeCharacters("\n      ");
+                writer.writeStartElement("witness");
+                writeFields(writer, TranscriptColumns.WITNESS, witness, "");
+                writer.writeEndElement();
+            }
+            writer.writeCharacters("\n    ");
+            writer.writeEndElement();
+        }
+        writer.writeCharacters("\n  ");
+        writer.writeEndElement();
+    }
+
+    /**
+     * Method to write the non-null values of a row (after the ID in column 0)
+     * as elements named by the fields.
+     */
+    private void writeFields(XMLStreamWriter writer, String[] fields, Object[] row, String indent)
+            throws XMLStreamException {
+        for (int i = 0; i < fields.length; i++) {
+            Object value = row[i + 1];
+            if (value != null) {
+                writer.writeCharacters(indent);
+                writer.writeStartElement(fields[i]);
+                writer.writeCharacters(value instanceof Date ? dateFormat.format((Date) value) : value.toString());
+                writer.writeEndElement();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,212 @@
+package edu.temple.cla.papolicy.transcriptdata;
+
+import edu.temple.cla.papolicy.xmlutil.XMLUtil;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import org.apache.log4j.Logger;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xml.sax.SAXException;
+
+/**
+ * Reads a transcript XML document and passes each transcript element, parsed
+ * into a Transcript, to a TranscriptSink. Reading does not depend on the
+ * database; TranscriptDAO is the sink that stores the transcripts.
+ *
+ * @author Paul Wolfgang
+ */
+public class TranscriptReader {
+
+    private static final Logger LOGGER = Logger.getLogger(TranscriptReader.class);
+
+    /**
+     * Method to read a transcript XML file.
+     *
+     * @param fileName The name of the file. A file whose name ends in .gz is
+     * decompressed.
+     * @param sink The destination for the transcripts
+     * @throws IOException If the file cannot be read or parsed, or if the
+     * sink fails
+     */
+    public void read(String fileName, TranscriptSink sink) throws IOException {
+        LOGGER.info("Begin reading file " + fileName);
+        try (InputStream in = XMLUtil.openInput(fileName)) {
+            read(in, sink, fileName);
+        }
+        LOGGER.info("Finished reading file " + fileName);
+    }
+
+    /**
+     * Method to read a transcript XML document. The sink is flushed at the
+     * end of the document.
+     *
+     * @param in The input stream
+     * @param sink The destination for the transcripts
+     * @throws IOException If the document cannot be read or parsed, or if
+     * the sink fails
+     */
+    public void read(InputStream in, TranscriptSink sink) throws IOException {
+        read(in, sink, null);
+    }
+
+    /**
+     * Method to read a transcript XML document. The sink is flushed at the
+     * end of the document.
+     *
+     * @param in The input stream
+     * @param sink The destination for the transcripts
+     * @param source The file name recorded in the TranscriptEvents, or null
+     * @throws IOException If the document cannot be read or parsed, or if
+     * the sink fails
+     */
+    public void read(InputStream in, TranscriptSink sink, String source) throws IOException {
+        Document doc;
+        TranscriptSpan span = TranscriptSpan.parse();
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(false);
+            factory.setValidating(false);
+            DocumentBuilder builder = factory.newDocumentBuilder();
+            doc = builder.parse(in);
+        } catch (SAXException | ParserConfigurationException ex) {
+            throw new IOException("Error parsing transcript XML", ex);
+        }
+        span.end(source, null, 0, 0);
+        sink.begin(countTranscripts(doc.getDocumentElement()));
+        findTranscripts(doc.getDocumentElement(), sink, source);
+        sink.flush();
+    }
+
+    /**
+     * Method to count the transcript elements in the DOM tree.
+     *
+     * @param e Element to be searched.
+     * @return The number of transcript elements
+     */
+    private static int countTranscripts(Element e) {
+        if (e.getNodeName().equals("transcript")) {
+            return 1;
+        }
+        int count = 0;
+        for (Element child = XMLUtil.firstChildElement(e); child != null;
+                child = XMLUtil.nextSiblingElement(child)) {
+            count += countTranscripts(child);
+        }
+        return count;
+    }
+
+    /**
+     * Method to recursively search the DOM tree for transcript elements.
+     *
+     * @param e Element to be searched.
+     * @param sink The destination for the transcripts
+     * @param source The file name recorded in the TranscriptEvents
+     */
+    private static void findTranscripts(Element e, TranscriptSink sink, String source) throws IOException {
+        if (e.getNodeName().equals("transcript")) {
+            TranscriptSpan span = TranscriptSpan.mapping();
+            Transcript t = parse(e);
+            span.end(source, t.getId(), t.getWitnesses() == null ? 0 : t.getWitnesses().size(), 0);
+            sink.write(t);
+        } else {
+            for (Element child = XMLUtil.firstChildElement(e); child != null;
+                    child = XMLUtil.nextSiblingElement(child)) {
+                findTranscripts(child, sink, source);
+            }
+        }
+    }
+
+    /**
+     * Method to parse a transcript element. The hearing and received dates
+     * are set from their year, month, and day. The bills contain only their
+     * IDs. The committees contain the alias name, with any ampersand replaced
+     * by "and" and the Senate prefix removed, and the chamber (1 for House, 2
+     * for Senate). Each witness refers to the transcript.
+     *
+     * @param e The DOM element representing a Transcript record
+     * @return The Transcript
+     */
+    public static Transcript parse(Element e) {
+        Transcript t = XMLUtil.readElement(Transcript.class, e);
+        t.setHearingDate(toDate(t.getHearingYear(), t.getHearingMonth(), t.getHearingDay()));
+        t.setReceivedDate(toDate(t.getReceivedYear(), t.getReceivedMonth(), t.getReceviedDay()));
+        t.setId(e.getAttribute("id"));
+        Element bills = XMLUtil.firstChildElement(e, "bills");
+        if (bills != null) {
+            t.setBills(new LinkedHashSet<>());
+            for (Element billIDElement = XMLUtil.firstChildElement(bills); billIDElement != null;
+                    billIDElement = XMLUtil.nextSiblingElement(billIDElement)) {
+                t.getBills().add(new BillID(billIDElement.getAttribute("id")));
+            }
+        }
+        Element committees = XMLUtil.firstChildElement(e, "committees");
+        if (committees != null) {
+            t.setCommittees(new LinkedHashSet<>());
+            for (Element committee = XMLUtil.firstChildElement(committees); committee != null;
+                    committee = XMLUtil.nextSiblingElement(committee)) {
+                String committeeAliasName = expandAmpersand(committee.getTextContent().trim());
+                CommitteeAliases alias = new CommitteeAliases();
+                if (committeeAliasName.startsWith("Senate")) {
+                    alias.setAlternateName(committeeAliasName.substring(7));
+                    alias.setChamber((short) 2);
+                } else {
+                    alias.setAlternateName(committeeAliasName);
+                    alias.setChamber((short) 1);
+                }
+                t.getCommittees().add(alias);
+            }
+        }
+        Element witnesses = XMLUtil.firstChildElement(e, "witnesses");
+        if (witnesses != null) {
+            t.setWitnesses(new LinkedHashSet<>());
+            for (Element witness = XMLUtil.firstChildElement(witnesses); witness != null;
+                    witness = XMLUtil.nextSiblingElement(witness)) {
+                Witness w = XMLUtil.readElement(Witness.class, witness);
+                w.setTranscript(t);
+                t.getWitnesses().add(w);
+            }
+        }
+        return t;
+    }
+
+    /**
+     * Method to form a date (midnight UTC) from its parts.
+     *
+     * @param year The year
+     * @param month The month
+     * @param day The day of the month
+     * @return The date, or null if any part is null
+     */
+    static Date toDate(Integer year, Integer month, Integer day) {
+        if (year == null || month == null || day == null) {
+            return null;
+        }
+        return Date.from(LocalDate.of(year, month, day).atStartOfDay().toInstant(ZoneOffset.UTC));
+    }
+
+    /**
+     * Method to replace ampersand characters with the word and.
+     *
+     * @param s String to be processed
+     * @return String with any occurrence of &amp; replaced with &quot;and&quot;
+     */
+    private static String expandAmpersand(String s) {
+        if (s.indexOf('&') == -1) {
+            return s;
+        }
+        StringBuilder stb = new StringBuilder(s);
+        int index;
+        while ((index = stb.indexOf("&")) != -1) {
+            stb.replace(index, index + 1, "and");
+        }
+        return stb.toString();
+    }
+
+}
@@ -0,0 +1,41 @@
+package edu.temple.cla.papolicy.transcriptdata;
+
+import java.io.IOException;
+
+/**
+ * Destination for the transcripts read by a TranscriptReader. The
+ * transcripts passed to write have been parsed but not resolved against the
+ * database: bills hold only their IDs, and committees hold the alias name
+ * (without any Senate prefix) and the chamber.
+ *
+ * @author Paul Wolfgang
+ */
+public interface TranscriptSink {
+
+    /**
+     * Method called once a document has been parsed, before its transcripts
+     * are written.
+     *
+     * @param transcripts The number of transcripts in the document
+     */
+    default void begin(int transcripts) {
+    }
+
+    /**
+     * Method to accept one transcript.
+     *
+     * @param transcript The parsed Transcript
+     * @throws IOException If the transcript cannot be written
+     */
+    void write(Transcript transcript) throws IOException;
+
+    /**
+     * Method called at the end of each document so that buffered
+     * transcripts can be written.
+     *
+     * @throws IOException If the transcripts cannot be written
+     */
+    default void flush() throws IOException {
+    }
+
+}
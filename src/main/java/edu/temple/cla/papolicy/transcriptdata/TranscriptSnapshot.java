@@ -0,0 +1,290 @@
+package edu.temple.cla.papolicy.transcriptdata;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+/**
+ * Read access to a binary snapshot of the transcripts written by
+ * TranscriptSnapshotWriter. The file is mapped into memory and nothing is
+ * decoded when it is opened; a field is decoded only when it is asked for, so
+ * opening a snapshot of the whole corpus takes about as long as mapping the
+ * file.
+ * <p>
+ * The file consists of a header, followed by fixed-width columns, and then a
+ * string dictionary. All values are big-endian.
+ * <ul>
+ * <li>Header: magic "PATS", version, and the number of transcripts,
+ * witnesses, bill links, committee links, and strings (7 ints, padded to 32
+ * bytes)</li>
+ * <li>Transcript columns: id, the TranscriptColumns.TRANSCRIPT properties,
+ * then the first index and count of the transcript's witnesses, bills, and
+ * committees</li>
+ * <li>Witness columns: the TranscriptColumns.WITNESS properties</li>
+ * <li>Bill column: the bill ID</li>
+ * <li>Committee columns: chamber and alias name</li>
+ * <li>String offsets: the offset of each string in the string data</li>
+ * <li>String data: each string as an int byte length followed by its UTF-8
+ * bytes</li>
+ * </ul>
+ * Integers and strings (as dictionary indexes) take 4 bytes, booleans 1 byte,
+ * and dates 8 bytes (milliseconds since the epoch). A null is stored as
+ * Integer.MIN_VALUE, -1, -1, or Long.MIN_VALUE respectively.
+ *
+ * @author Paul Wolfgang
+ */
+public class TranscriptSnapshot {
+
+    /** The first four bytes of a snapshot, "PATS". */
+    static final int MAGIC = 0x50415453;
+    /** The format version. */
+    static final int VERSION = 1;
+    /** The size of the header in bytes. */
+    static final int HEADER_SIZE = 32;
+    /**
+     * The types of the TranscriptColumns.TRANSCRIPT properties: I integer,
+     * B boolean, S string, D date.
+     */
+    static final String TRANSCRIPT_TYPES = "IIBIIISIIIISDSBSBSS";
+    /** The number of link columns (first and count for witnesses, bills, committees). */
+    static final int LINK_COLUMNS = 6;
+
+    private final ByteBuffer buffer;
+    private final int transcriptCount;
+    private final int witnessCount;
+    private final int billCount;
+    private final int committeeCount;
+    private final int stringCount;
+    /** Offsets of the id column, then the TRANSCRIPT columns, then the link columns. */
+    private final int[] transcriptColumns;
+    private final int witnessColumns;
+    private final int billColumn;
+    private final int committeeColumns;
+    private final int stringOffsets;
+    private final int stringData;
+    private Map<String, Integer> index;
+
+    private TranscriptSnapshot(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a transcript snapshot");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported snapshot version " + buffer.getInt(4));
+        }
+        transcriptCount = buffer.getInt(8);
+        witnessCount = buffer.getInt(12);
+        billCount = buffer.getInt(16);
+        committeeCount = buffer.getInt(20);
+        stringCount = buffer.getInt(24);
+        transcriptColumns = new int[1 + TRANSCRIPT_TYPES.length() + LINK_COLUMNS];
+        int offset = HEADER_SIZE;
+        for (int i = 0; i < transcriptColumns.length; i++) {
+            transcriptColumns[i] = offset;
+            offset += transcriptCount * transcriptWidth(i);
+        }
+        witnessColumns = offset;
+        offset += witnessCount * 4 * TranscriptColumns.WITNESS.length;
+        billColumn = offset;
+        offset += billCount * 4;
+        committeeColumns = offset;
+        offset += committeeCount * 8;
+        stringOffsets = offset;
+        offset += stringCount * 4;
+        stringData = offset;
+        if (offset > buffer.capacity()) {
+            throw new IOException("Truncated transcript snapshot");
+        }
+    }
+
+    /**
+     * Method to open a snapshot. The file is mapped read-only; the mapping
+     * remains valid after this method returns.
+     *
+     * @param file The snapshot file
+     * @return The snapshot
+     * @throws IOException If the file cannot be mapped or is not a snapshot
+     */
+    public static TranscriptSnapshot open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too large to map");
+            }
+            return new TranscriptSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * @return The number of transcripts
+     */
+    public int size() {
+        return transcriptCount;
+    }
+
+    /**
+     * @param i The index of a transcript
+     * @return The transcript ID
+     */
+    public String getId(int i) {
+        return string(buffer.getInt(transcriptColumns[0] + i * 4));
+    }
+
+    /**
+     * Method to find a transcript by its ID. The index from ID to position
+     * is built on the first call.
+     *
+     * @param id The transcript ID
+     * @return The index of the transcript, or -1 if it is not present
+     */
+    public synchronized int indexOf(String id) {
+        if (index == null) {
+            index = new HashMap<>(transcriptCount * 2);
+            for (int i = 0; i < transcriptCount; i++) {
+                index.put(getId(i), i);
+            }
+        }
+        Integer i = index.get(id);
+        return i == null ? -1 : i;
+    }
+
+    /**
+     * Method to decode a single property of a transcript.
+     *
+     * @param i The index of a transcript
+     * @param property The name of one of the TranscriptColumns.TRANSCRIPT
+     * properties
+     * @return The value as an Integer, Boolean, String, or Date, or null
+     */
+    public Object getValue(int i, String property) {
+        for (int column = 0; column < TranscriptColumns.TRANSCRIPT.length; column++) {
+            if (TranscriptColumns.TRANSCRIPT[column].equals(property)) {
+                return value(column, i);
+            }
+        }
+        throw new IllegalArgumentException("Unknown property " + property);
+    }
+
+    /**
+     * Method to decode a transcript with its bills, committees, and
+     * witnesses, in the form produced by TranscriptReader.parse.
+     *
+     * @param i The index of a transcript
+     * @return A new Transcript
+     */
+    public Transcript get(int i) {
+        Object[] v = new Object[TranscriptColumns.TRANSCRIPT.length];
+        for (int column = 0; column < v.length; column++) {
+            v[column] = value(column, i);
+        }
+        Transcript t = new Transcript(getId(i), (Integer) v[0], (Integer) v[1],
+                (Boolean) v[2], (Integer) v[3], (Integer) v[4], (Integer) v[5],
+                TranscriptReader.toDate((Integer) v[3], (Integer) v[4], (Integer) v[5]),
+                (String) v[6], (Integer) v[7], (Integer) v[8], (Integer) v[9], (Integer) v[10],
+                TranscriptReader.toDate((Integer) v[8], (Integer) v[9], (Integer) v[10]),
+                (String) v[11], (Date) v[12], (String) v[13], (Boolean) v[14],
+                (String) v[15], (Boolean) v[16], (String) v[17], (String) v[18]);
+        int witnesses = link(0, i);
+        int witnessTotal = link(1, i);
+        if (witnessTotal > 0) {
+            t.setWitnesses(new LinkedHashSet<>());
+            for (int w = witnesses; w < witnesses + witnessTotal; w++) {
+                Witness witness = new Witness(witnessField(0, w), witnessField(1, w),
+                        witnessField(2, w), witnessField(3, w), witnessField(4, w),
+                        witnessField(5, w), witnessField(6, w));
+                witness.setTranscript(t);
+                t.getWitnesses().add(witness);
+            }
+        }
+        int bills = link(2, i);
+        int billTotal = link(3, i);
+        if (billTotal > 0) {
+            t.setBills(new LinkedHashSet<>());
+            for (int b = bills; b < bills + billTotal; b++) {
+                t.getBills().add(new BillID(string(buffer.getInt(billColumn + b * 4))));
+            }
+        }
+        int committees = link(4, i);
+        int committeeTotal = link(5, i);
+        if (committeeTotal > 0) {
+            t.setCommittees(new LinkedHashSet<>());
+            for (int c = committees; c < committees + committeeTotal; c++) {
+                CommitteeAliases committee = new CommitteeAliases();
+                int chamber = buffer.getInt(committeeColumns + c * 4);
+                committee.setChamber(chamber == 0 ? null : (short) chamber);
+                committee.setAlternateName(string(buffer.getInt(committeeColumns + committeeCount * 4 + c * 4)));
+                t.getCommittees().add(committee);
+            }
+        }
+        return t;
+    }
+
+    /**
+     * @param column The index of a column of the transcript table
+     * @return The width of its values in bytes
+     */
+    static int transcriptWidth(int column) {
+        if (column == 0 || column > TRANSCRIPT_TYPES.length()) {
+            return 4;
+        }
+        switch (TRANSCRIPT_TYPES.charAt(column - 1)) {
+            case 'B':
+                return 1;
+            case 'D':
+                return 8;
+            default:
+                return 4;
+        }
+    }
+
+    private Object value(int column, int i) {
+        int width = transcriptWidth(column + 1);
+        int position = transcriptColumns[column + 1] + i * width;
+        switch (TRANSCRIPT_TYPES.charAt(column)) {
+            case 'I': {
+                int value = buffer.getInt(position);
+                return value == Integer.MIN_VALUE ? null : value;
+            }
+            case 'B': {
+                byte value = buffer.get(position);
+                return value < 0 ? null : value != 0;
+            }
+            case 'D': {
+                long value = buffer.getLong(position);
+                return value == Long.MIN_VALUE ? null : new Date(value);
+            }
+            default:
+                return string(buffer.getInt(position));
+        }
+    }
+
+    private int link(int column, int i) {
+        return buffer.getInt(transcriptColumns[1 + TRANSCRIPT_TYPES.length() + column] + i * 4);
+    }
+
+    private String witnessField(int column, int w) {
+        return string(buffer.getInt(witnessColumns + (column * witnessCount + w) * 4));
+    }
+
+    private String string(int s) {
+        if (s < 0) {
+            return null;
+        }
+        int position = stringData + buffer.getInt(stringOffsets + s * 4);
+        byte[] bytes = new byte[buffer.getInt(position)];
+        // Each call reads through its own duplicate so that threads do not
+        // share a position
+        ByteBuffer data = buffer.duplicate();
+        ((Buffer) data).position(position + 4);
+        data.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
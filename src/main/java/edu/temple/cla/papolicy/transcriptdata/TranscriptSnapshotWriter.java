@@ -0,0 +1,326 @@
+package edu.temple.cla.papolicy.transcriptdata;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the transcripts as a binary snapshot that can be opened with
+ * TranscriptSnapshot. Each column, and the string data, is written to its own
+ * temporary file next to the snapshot, and the files are copied into the
+ * snapshot when the sink is closed, so the memory used does not grow with the
+ * corpus apart from the dictionary of short strings. Strings of up to
+ * DEDUPLICATE_LENGTH characters (names, bill IDs, committees, locations) are
+ * stored once; longer strings such as summaries are stored as they occur.
+ * Since TranscriptSnapshot maps the file into a single buffer, a snapshot
+ * is limited to 2GB; a write that would exceed this fails.
+ *
+ * @author Paul Wolfgang
+ */
+public class TranscriptSnapshotWriter extends FlatFileSink {
+
+    /** The longest string that is looked up in the dictionary before it is added. */
+    private static final int DEDUPLICATE_LENGTH = 128;
+    /** The size of the buffer of each column file. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Path file;
+    /** The column files in the order they are copied into the snapshot. */
+    private final List<Column> columns = new ArrayList<>();
+    private final Column[] transcriptColumns
+            = new Column[1 + TranscriptSnapshot.TRANSCRIPT_TYPES.length() + TranscriptSnapshot.LINK_COLUMNS];
+    private final Column[] witnessColumns = new Column[TranscriptColumns.WITNESS.length];
+    private final Column billColumn;
+    private final Column committeeChamberColumn;
+    private final Column committeeNameColumn;
+    private final Column stringOffsets;
+    private final Column stringData;
+    /** The size of the snapshot written so far, including the header. */
+    private long size = TranscriptSnapshot.HEADER_SIZE;
+    /** Set when a write has failed, leaving the columns inconsistent. */
+    private boolean failed;
+    private final Map<String, Integer> dictionary = new HashMap<>();
+    private int transcriptCount;
+    private int witnessCount;
+    private int billCount;
+    private int committeeCount;
+    private int stringCount;
+
+    /**
+     * A column being written to a temporary file.
+     */
+    private class Column {
+
+        private final Path path;
+        private final DataOutputStream out;
+
+        private Column() throws IOException {
+            path = Files.createTempFile(file.toAbsolutePath().getParent(), "snapshot", ".tmp");
+            try {
+                out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), BUFFER_SIZE));
+            } catch (IOException ex) {
+                Files.deleteIfExists(path);
+                throw ex;
+            }
+            columns.add(this);
+        }
+
+        private void writeInt(int value) throws IOException {
+            reserve(4);
+            out.writeInt(value);
+        }
+
+        private void writeByte(int value) throws IOException {
+            reserve(1);
+            out.writeByte(value);
+        }
+
+        private void writeLong(long value) throws IOException {
+            reserve(8);
+            out.writeLong(value);
+        }
+
+        private void write(byte[] bytes) throws IOException {
+            reserve(bytes.length);
+            out.write(bytes);
+        }
+
+        /**
+         * @return The number of bytes written, which is less than 2GB
+         */
+        private int size() {
+            return out.size();
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param file The snapshot file, which is replaced when the sink is closed
+     * @throws IOException If the temporary files cannot be created
+     */
+    public TranscriptSnapshotWriter(Path file) throws IOException {
+        this.file = file;
+        try {
+            for (int i = 0; i < transcriptColumns.length; i++) {
+                transcriptColumns[i] = new Column();
+            }
+            for (int i = 0; i < witnessColumns.length; i++) {
+                witnessColumns[i] = new Column();
+            }
+            billColumn = new Column();
+            committeeChamberColumn = new Column();
+            committeeNameColumn = new Column();
+            stringOffsets = new Column();
+            stringData = new Column();
+        } catch (IOException ex) {
+            deleteColumns(ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * Method to account for bytes about to be added to a column.
+     *
+     * @param bytes The number of bytes
+     * @throws IOException If the snapshot would exceed 2GB
+     */
+    private void reserve(int bytes) throws IOException {
+        if (size + bytes > Integer.MAX_VALUE) {
+            throw new IOException("Snapshot " + file + " would exceed 2GB");
+        }
+        size += bytes;
+    }
+
+    /**
+     * Method to add a transcript to the columns. If this fails, part of the
+     * transcript may have been written, so the snapshot is not written when
+     * the sink is closed.
+     *
+     * @param t The transcript
+     * @throws IOException If a column cannot be written or the snapshot would
+     * exceed 2GB
+     */
+    @Override
+    public void write(Transcript t) throws IOException {
+        try {
+            writeColumns(t);
+        } catch (Throwable ex) {
+            failed = true;
+            throw ex;
+        }
+    }
+
+    private void writeColumns(Transcript t) throws IOException {
+        transcriptColumns[0].writeInt(string(t.getId()));
+        Object[] values = TranscriptColumns.values(t);
+        for (int column = 0; column < values.length; column++) {
+            Column out = transcriptColumns[column + 1];
+            Object value = values[column];
+            switch (TranscriptSnapshot.TRANSCRIPT_TYPES.charAt(column)) {
+                case 'I':
+                    out.writeInt(value == null ? Integer.MIN_VALUE : (Integer) value);
+                    break;
+                case 'B':
+                    out.writeByte(value == null ? -1 : (Boolean) value ? 1 : 0);
+                    break;
+                case 'D':
+                    out.writeLong(value == null ? Long.MIN_VALUE : ((Date) value).getTime());
+                    break;
+                default:
+                    out.writeInt(string((String) value));
+            }
+        }
+        int firstWitness = witnessCount;
+        if (t.getWitnesses() != null) {
+            for (Witness witness : t.getWitnesses()) {
+                Object[] witnessValues = TranscriptColumns.values(witness);
+                for (int column = 0; column < witnessValues.length; column++) {
+                    witnessColumns[column].writeInt(string((String) witnessValues[column]));
+                }
+                witnessCount++;
+            }
+        }
+        int firstBill = billCount;
+        if (t.getBills() != null) {
+            for (BillID billID : t.getBills()) {
+                billColumn.writeInt(string(billID.getBillID()));
+                billCount++;
+            }
+        }
+        int firstCommittee = committeeCount;
+        if (t.getCommittees() != null) {
+            for (CommitteeAliases committee : t.getCommittees()) {
+                committeeChamberColumn.writeInt(committee.getChamber() == null ? 0 : committee.getChamber());
+                committeeNameColumn.writeInt(string(committee.getAlternateName()));
+                committeeCount++;
+            }
+        }
+        int links = 1 + values.length;
+        transcriptColumns[links].writeInt(firstWitness);
+        transcriptColumns[links + 1].writeInt(witnessCount - firstWitness);
+        transcriptColumns[links + 2].writeInt(firstBill);
+        transcriptColumns[links + 3].writeInt(billCount - firstBill);
+        transcriptColumns[links + 4].writeInt(firstCommittee);
+        transcriptColumns[links + 5].writeInt(committeeCount - firstCommittee);
+        transcriptCount++;
+    }
+
+    /**
+     * Method to write the header and copy the columns into the snapshot. The
+     * temporary files are deleted whether or not this succeeds. Nothing is
+     * written if a write failed.
+     *
+     * @throws IOException If the snapshot cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (failed) {
+            deleteColumns(null);
+            return;
+        }
+        try {
+            for (Column column : columns) {
+                column.out.close();
+            }
+            ByteBuffer header = ByteBuffer.allocate(TranscriptSnapshot.HEADER_SIZE);
+            header.putInt(TranscriptSnapshot.MAGIC)
+                    .putInt(TranscriptSnapshot.VERSION)
+                    .putInt(transcriptCount)
+                    .putInt(witnessCount)
+                    .putInt(billCount)
+                    .putInt(committeeCount)
+                    .putInt(stringCount);
+            // The whole header, including the padding after the counts. This
+            // goes through Buffer, whose rewind does not return ByteBuffer on
+            // Java 8.
+            ((Buffer) header).rewind();
+            try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                while (header.hasRemaining()) {
+                    out.write(header);
+                }
+                for (Column column : columns) {
+                    try (FileChannel in = FileChannel.open(column.path, StandardOpenOption.READ)) {
+                        long position = 0;
+                        long length = in.size();
+                        while (position < length) {
+                            position += in.transferTo(position, length - position, out);
+                        }
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            deleteColumns(ex);
+            throw ex;
+        }
+        deleteColumns(null);
+    }
+
+    /**
+     * Method to close and delete the temporary files.
+     *
+     * @param failure An exception to which errors are added as suppressed
+     * exceptions, or null to throw them
+     * @throws IOException If a file cannot be deleted and failure is null
+     */
+    private void deleteColumns(IOException failure) throws IOException {
+        IOException error = failure;
+        for (Column column : columns) {
+            try {
+                column.out.close();
+                Files.deleteIfExists(column.path);
+            } catch (IOException ex) {
+                if (error == null) {
+                    error = ex;
+                } else {
+                    error.addSuppressed(ex);
+                }
+            }
+        }
+        columns.clear();
+        if (failure == null && error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Method to add a string to the dictionary.
+     *
+     * @param s The string
+     * @return Its index in the dictionary, or -1 if it is null
+     */
+    private int string(String s) throws IOException {
+        if (s == null) {
+            return -1;
+        }
+        boolean deduplicate = s.length() <= DEDUPLICATE_LENGTH;
+        if (deduplicate) {
+            Integer existing = dictionary.get(s);
+            if (existing != null) {
+                return existing;
+            }
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        stringOffsets.writeInt(stringData.size());
+        stringData.writeInt(bytes.length);
+        stringData.write(bytes);
+        if (deduplicate) {
+            dictionary.put(s, stringCount);
+        }
+        return stringCount++;
+    }
+
+}
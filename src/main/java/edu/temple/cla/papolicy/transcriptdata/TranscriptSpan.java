@@ -0,0 +1,96 @@
+package edu.temple.cla.papolicy.transcriptdata;
+
+/**
+ * A stage of loading a transcript file, timed by one of the TranscriptEvents.
+ * Whether the JVM has Flight Recorder is checked once. If it does not, as on
+ * Oracle JDK 8 or OpenJDK 8 before 8u262, the spans do nothing and
+ * TranscriptEvents, whose classes extend jdk.jfr.Event, is never loaded.
+ *
+ * @author Paul Wolfgang
+ */
+public class TranscriptSpan {
+
+    private static final boolean RECORDER_AVAILABLE = checkRecorder();
+    private static final TranscriptSpan NONE = new TranscriptSpan();
+
+    TranscriptSpan() {
+    }
+
+    /**
+     * Method to determine whether the JVM has Flight Recorder, and so whether
+     * the TranscriptEvents are recorded and a recording can be analyzed.
+     *
+     * @return true if the jdk.jfr classes are present
+     */
+    public static boolean isRecorderAvailable() {
+        return RECORDER_AVAILABLE;
+    }
+
+    private static boolean checkRecorder() {
+        try {
+            Class.forName("jdk.jfr.Event", false, TranscriptSpan.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Parsing a document. end records only the file.
+     *
+     * @return The span, which has begun
+     */
+    static TranscriptSpan parse() {
+        return RECORDER_AVAILABLE ? TranscriptEvents.parse() : NONE;
+    }
+
+    /**
+     * Mapping a transcript element. end records the number of witnesses.
+     *
+     * @return The span, which has begun
+     */
+    static TranscriptSpan mapping() {
+        return RECORDER_AVAILABLE ? TranscriptEvents.mapping() : NONE;
+    }
+
+    /**
+     * Looking up the committees of a transcript. end records the number of
+     * committees and the number created.
+     *
+     * @return The span, which has begun
+     */
+    static TranscriptSpan committees() {
+        return RECORDER_AVAILABLE ? TranscriptEvents.committees() : NONE;
+    }
+
+    /**
+     * Looking up the bills of a transcript. end records the number of bills.
+     *
+     * @return The span, which has begun
+     */
+    static TranscriptSpan bills() {
+        return RECORDER_AVAILABLE ? TranscriptEvents.bills() : NONE;
+    }
+
+    /**
+     * Committing a transaction. end records the number of transcripts and
+     * the attempt.
+     *
+     * @return The span, which has begun
+     */
+    static TranscriptSpan commit() {
+        return RECORDER_AVAILABLE ? TranscriptEvents.commit() : NONE;
+    }
+
+    /**
+     * Method to end the span and record its event if a recording wants it.
+     *
+     * @param file The file being loaded
+     * @param transcriptID The transcript, or the first of a batch, or null
+     * @param count The first count described by the factory method
+     * @param secondCount The second count described by the factory method
+     */
+    void end(String file, String transcriptID, int count, int secondCount) {
+    }
+
+}
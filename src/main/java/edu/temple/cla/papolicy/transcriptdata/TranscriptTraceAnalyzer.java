@@ -0,0 +1,150 @@
+package edu.temple.cla.papolicy.transcriptdata;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Summarizes the TranscriptEvents in a Flight Recorder recording: the count,
+ * total, mean, and longest duration of each stage, the time spent in each
+ * stage per file, and the slowest transcripts with the time each stage took
+ * for them. A commit is counted against a transcript only when the transcript
+ * was committed by itself; batched commits appear in the stage and file
+ * totals.
+ *
+ * @author Paul Wolfgang
+ */
+public class TranscriptTraceAnalyzer {
+
+    /** The stages in pipeline order. */
+    private static final String[] STAGES = {"Parse", "Mapping", "Committees", "Bills", "Commit"};
+    /** The stages that are recorded per transcript. */
+    private static final int FIRST_TRANSCRIPT_STAGE = 1;
+
+    private final long[] stageCounts = new long[STAGES.length];
+    private final long[] stageNanos = new long[STAGES.length];
+    private final long[] stageMaxNanos = new long[STAGES.length];
+    private final Map<String, long[]> fileNanos = new TreeMap<>();
+    private final Map<String, long[]> transcriptNanos = new HashMap<>();
+
+    /**
+     * Method to read the transcript events of a recording. Other events are
+     * ignored. More than one recording may be read.
+     *
+     * @param recording The .jfr file
+     * @throws IOException If the recording cannot be read
+     */
+    public void read(Path recording) throws IOException {
+        try (RecordingFile file = new RecordingFile(recording)) {
+            while (file.hasMoreEvents()) {
+                RecordedEvent event = file.readEvent();
+                String name = event.getEventType().getName();
+                if (!name.startsWith(TranscriptEvents.PREFIX)) {
+                    continue;
+                }
+                int stage = stageIndex(name.substring(TranscriptEvents.PREFIX.length()));
+                if (stage >= 0) {
+                    record(event, stage);
+                }
+            }
+        }
+    }
+
+    private void record(RecordedEvent event, int stage) {
+        long nanos = event.getDuration().toNanos();
+        stageCounts[stage]++;
+        stageNanos[stage] += nanos;
+        stageMaxNanos[stage] = Math.max(stageMaxNanos[stage], nanos);
+        String file = event.getString("file");
+        fileNanos.computeIfAbsent(file == null ? "(stream)" : file, (k) -> new long[STAGES.length])[stage] += nanos;
+        String transcriptID = event.getString("transcriptID");
+        if (transcriptID == null || stage < FIRST_TRANSCRIPT_STAGE
+                || ("Commit".equals(STAGES[stage]) && event.getInt("transcripts") != 1)) {
+            return;
+        }
+        transcriptNanos.computeIfAbsent(transcriptID, (k) -> new long[STAGES.length])[stage] += nanos;
+    }
+
+    private static int stageIndex(String stage) {
+        for (int i = 0; i < STAGES.length; i++) {
+            if (STAGES[i].equals(stage)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Method to print the summary.
+     *
+     * @param out The destination
+     * @param top The number of slowest transcripts to list
+     */
+    public void print(PrintStream out, int top) {
+        out.println("Stage            Count     Total ms    Mean ms     Max ms");
+        for (int i = 0; i < STAGES.length; i++) {
+            out.printf("%-12s %9d %12.1f %10.3f %10.3f%n", STAGES[i], stageCounts[i], millis(stageNanos[i]),
+                    stageCounts[i] == 0 ? 0.0 : millis(stageNanos[i]) / stageCounts[i], millis(stageMaxNanos[i]));
+        }
+        out.println();
+        out.print("File (total ms)");
+        printStageHeadings(out, 0);
+        for (Map.Entry<String, long[]> entry : fileNanos.entrySet()) {
+            out.println(entry.getKey());
+            out.printf("%15s", "");
+            printStages(out, entry.getValue(), 0);
+        }
+        out.println();
+        out.printf("Slowest %d transcripts (ms)%n", top);
+        out.printf("%-12s %10s", "Transcript", "Total");
+        printStageHeadings(out, FIRST_TRANSCRIPT_STAGE);
+        for (Map.Entry<String, long[]> entry : slowest(top)) {
+            out.printf("%-12s %10.3f", entry.getKey(), millis(sum(entry.getValue())));
+            printStages(out, entry.getValue(), FIRST_TRANSCRIPT_STAGE);
+        }
+    }
+
+    private static void printStageHeadings(PrintStream out, int first) {
+        for (int i = first; i < STAGES.length; i++) {
+            out.printf(" %11s", STAGES[i]);
+        }
+        out.println();
+    }
+
+    private static void printStages(PrintStream out, long[] nanos, int first) {
+        for (int i = first; i < STAGES.length; i++) {
+            out.printf(" %11.3f", millis(nanos[i]));
+        }
+        out.println();
+    }
+
+    /**
+     * @param top The number of transcripts
+     * @return The transcripts with the largest total time, slowest first
+     */
+    private List<Map.Entry<String, long[]>> slowest(int top) {
+        List<Map.Entry<String, long[]>> entries = new ArrayList<>(transcriptNanos.entrySet());
+        entries.sort((a, b) -> Long.compare(sum(b.getValue()), sum(a.getValue())));
+        return entries.subList(0, Math.min(top, entries.size()));
+    }
+
+    private static long sum(long[] values) {
+        long sum = 0;
+        for (long value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+}
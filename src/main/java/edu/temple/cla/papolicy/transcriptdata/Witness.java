@@ -1,11 +1,13 @@
 package edu.temple.cla.papolicy.transcriptdata;
 // Generated Sep 23, 2010 3:30:16 PM by Hibernate Tools 3.2.1.GA
 
+import javax.persistence.Entity;
 
 
 /**
  * Witness generated by hbm2java
  */
+@Entity
 public class Witness  implements java.io.Serializable {
 
 
@@ -0,0 +1,275 @@
+package edu.temple.cla.papolicy.uploadtranscriptdata;
+
+import edu.temple.cla.papolicy.transcriptdata.CommitteeNameIndex;
+import edu.temple.cla.papolicy.transcriptdata.DuplicateIdDetector;
+import edu.temple.cla.papolicy.transcriptdata.HearingRollups;
+import edu.temple.cla.papolicy.transcriptdata.LoadGovernor;
+import edu.temple.cla.papolicy.transcriptdata.ReferenceDataCache;
+import edu.temple.cla.papolicy.transcriptdata.TranscriptDAO;
+import edu.temple.cla.papolicy.xmlutil.XMLUtil;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.persistence.PersistenceException;
+import org.apache.log4j.Logger;
+import org.hibernate.SessionFactory;
+
+/**
+ * Watches a directory and loads each transcript XML file that is dropped into
+ * it. The SessionFactory and the duplicate ID detector are created once and
+ * stay warm for the life of the process, and the reference data cache is
+ * kept for the length of each file, so the time from a file being dropped to
+ * its rows being committed is the quiet period plus the load itself.
+ * <p>
+ * A file is considered complete once its size and modification time have not
+ * changed for the quiet period. Files that are written under a temporary name
+ * (starting with a dot, or ending in .tmp, .part, or ~) are ignored, so a
+ * producer that writes to a temporary name and renames it into place is picked
+ * up as soon as the rename is seen. Files already in the directory when the
+ * watcher starts are loaded as well; any whose transcripts are already in the
+ * database are rejected as duplicates.
+ * <p>
+ * A file that cannot be parsed, or whose load fails with a database error, is
+ * logged and the watcher carries on. Only the transcripts that were committed
+ * are remembered as loaded, so a corrected file can be dropped in again.
+ *
+ * @author Paul Wolfgang
+ */
+public class DirectoryWatcher {
+
+    private static final Logger LOGGER = Logger.getLogger(DirectoryWatcher.class);
+    private static final long POLL_MILLIS = 250;
+
+    private final SessionFactory sessionFactory;
+    private final Path directory;
+    private final long quietMillis;
+    private final ReferenceDataCache referenceDataCache = new ReferenceDataCache();
+    private final Map<Path, PendingFile> pendingFiles = new LinkedHashMap<>();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private volatile boolean running = true;
+    private WatchService watchService;
+    private DuplicateIdDetector duplicateIdDetector;
+    private LoadGovernor loadGovernor;
+    private HearingRollups hearingRollups;
+
+    /**
+     * The last observed state of a file that has not yet been loaded.
+     */
+    private static class PendingFile {
+
+        long size = -1;
+        long lastModified = -1;
+        long stableSince;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param factory The SessionFactory
+     * @param directory The directory to be watched
+     * @param quietMillis The time a file must remain unchanged before it is
+     * loaded
+     */
+    public DirectoryWatcher(SessionFactory factory, Path directory, long quietMillis) {
+        this.sessionFactory = factory;
+        this.directory = directory;
+        this.quietMillis = quietMillis;
+    }
+
+    /**
+     * Sets the governor used to batch and throttle commits.
+     *
+     * @param loadGovernor The LoadGovernor or null
+     */
+    public void setLoadGovernor(LoadGovernor loadGovernor) {
+        this.loadGovernor = loadGovernor;
+    }
+
+    /**
+     * Sets the summary tables to be maintained as files are loaded.
+     *
+     * @param hearingRollups The HearingRollups or null
+     */
+    public void setHearingRollups(HearingRollups hearingRollups) {
+        this.hearingRollups = hearingRollups;
+    }
+
+    /**
+     * Sets the index used to match committee names that are not found
+     * exactly.
+     *
+     * @param committeeNameIndex The CommitteeNameIndex or null
+     */
+    public void setCommitteeNameIndex(CommitteeNameIndex committeeNameIndex) {
+        referenceDataCache.setCommitteeNameIndex(committeeNameIndex);
+    }
+
+    /**
+     * Method to watch the directory until shutdown is called.
+     *
+     * @throws IOException If the directory cannot be watched
+     */
+    public void run() throws IOException {
+        try {
+            watchService = directory.getFileSystem().newWatchService();
+            directory.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            duplicateIdDetector = DuplicateIdDetector.fromDatabase(sessionFactory, 1024);
+            // Registered first, so that a file written while the directory
+            // is listed is still seen.
+            try (DirectoryStream<Path> existing = Files.newDirectoryStream(directory)) {
+                for (Path path : existing) {
+                    if (!isTemporary(path.getFileName().toString())) {
+                        pendingFiles.computeIfAbsent(path, (p) -> new PendingFile());
+                    }
+                }
+            }
+            LOGGER.info("Watching " + directory);
+            while (running) {
+                WatchKey key = watchService.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    recordEvents(key.pollEvents());
+                    key.reset();
+                }
+                loadCompletedFiles();
+            }
+        } catch (ClosedWatchServiceException | InterruptedException ex) {
+            // Shutdown requested
+        } finally {
+            if (watchService != null) {
+                watchService.close();
+            }
+            LOGGER.info("Stopped watching " + directory);
+            stopped.countDown();
+        }
+    }
+
+    /**
+     * Method to request that the watcher stop. Any file that is being loaded
+     * is allowed to finish. Waits up to the given time for the watcher to stop.
+     *
+     * @param timeoutMillis The maximum time to wait
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public void shutdown(long timeoutMillis) throws InterruptedException {
+        running = false;
+        stopped.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void recordEvents(List<WatchEvent<?>> events) {
+        for (WatchEvent<?> event : events) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                LOGGER.warn("Watch events lost for " + directory);
+                continue;
+            }
+            Path name = (Path) event.context();
+            if (!isTemporary(name.toString())) {
+                pendingFiles.computeIfAbsent(directory.resolve(name), (path) -> new PendingFile());
+            }
+        }
+    }
+
+    private void loadCompletedFiles() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<Path, PendingFile>> itr = pendingFiles.entrySet().iterator();
+        while (itr.hasNext() && running) {
+            Map.Entry<Path, PendingFile> entry = itr.next();
+            Path path = entry.getKey();
+            PendingFile pending = entry.getValue();
+            long size;
+            long lastModified;
+            try {
+                if (!Files.isRegularFile(path)) {
+                    itr.remove();
+                    continue;
+                }
+                size = Files.size(path);
+                lastModified = Files.getLastModifiedTime(path).toMillis();
+            } catch (IOException ex) {
+                itr.remove();
+                continue;
+            }
+            if (size != pending.size || lastModified != pending.lastModified) {
+                pending.size = size;
+                pending.lastModified = lastModified;
+                pending.stableSince = now;
+            } else if (now - pending.stableSince >= quietMillis) {
+                itr.remove();
+                loadFile(path);
+            }
+        }
+    }
+
+    private void loadFile(Path path) {
+        List<String> ids = new ArrayList<>();
+        try (InputStream in = XMLUtil.openInput(path.toString())) {
+            DuplicateIdDetector.readIds(in, path.toString(), ids::add);
+        } catch (IOException ex) {
+            LOGGER.error("Unable to scan " + path + ", not loaded", ex);
+            return;
+        }
+        Set<String> idsInFile = new HashSet<>();
+        boolean duplicatesFound = false;
+        for (String id : ids) {
+            if (!idsInFile.add(id)) {
+                LOGGER.error("Duplicate transcript ID " + id + " is repeated in " + path);
+                duplicatesFound = true;
+            } else if (duplicateIdDetector.isInDatabase(id)) {
+                LOGGER.error("Duplicate transcript ID " + id + " in " + path
+                        + " already exists in the database");
+                duplicatesFound = true;
+            }
+        }
+        if (duplicatesFound) {
+            LOGGER.error(path + " contains duplicate transcript IDs, not loaded");
+            return;
+        }
+        long start = System.currentTimeMillis();
+        TranscriptDAO transcriptDAO = new TranscriptDAO(sessionFactory);
+        transcriptDAO.setReferenceDataCache(referenceDataCache);
+        transcriptDAO.setLoadGovernor(loadGovernor);
+        transcriptDAO.setHearingRollups(hearingRollups);
+        transcriptDAO.setExitOnFailure(false);
+        boolean loaded;
+        try {
+            loaded = transcriptDAO.loadDocument(path.toString());
+        } catch (PersistenceException ex) {
+            // Includes HibernateException
+            LOGGER.error("Unable to load " + path, ex);
+            loaded = false;
+        }
+        // The committee aliases may be changed between files
+        referenceDataCache.clear();
+        List<String> committedIds = transcriptDAO.getCommittedIds();
+        committedIds.forEach(duplicateIdDetector::seed);
+        if (loaded) {
+            LOGGER.info("Loaded " + path + " in " + (System.currentTimeMillis() - start) + " ms");
+        } else {
+            LOGGER.error("Loading " + path + " failed after " + committedIds.size()
+                    + " of " + ids.size() + " transcripts were committed");
+        }
+    }
+
+    private static boolean isTemporary(String name) {
+        return name.startsWith(".") || name.endsWith(".tmp")
+                || name.endsWith(".part") || name.endsWith("~");
+    }
+
+}
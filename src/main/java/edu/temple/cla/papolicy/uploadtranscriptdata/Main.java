@@ -1,16 +1,44 @@
 package edu.temple.cla.papolicy.uploadtranscriptdata;
 
+import edu.temple.cla.papolicy.transcriptdata.CatalogNamingStrategy;
+import edu.temple.cla.papolicy.transcriptdata.CommitteeNameIndex;
+import edu.temple.cla.papolicy.transcriptdata.CsvSink;
+import edu.temple.cla.papolicy.transcriptdata.DuplicateIdDetector;
+import edu.temple.cla.papolicy.transcriptdata.FlatFileSink;
+import edu.temple.cla.papolicy.transcriptdata.HearingRollups;
+import edu.temple.cla.papolicy.transcriptdata.JsonLinesSink;
+import edu.temple.cla.papolicy.transcriptdata.LoadGovernor;
+import edu.temple.cla.papolicy.transcriptdata.MappingFiles;
+import edu.temple.cla.papolicy.transcriptdata.ReferenceDataCache;
 import edu.temple.cla.papolicy.transcriptdata.TranscriptDAO;
+import edu.temple.cla.papolicy.transcriptdata.TranscriptDiff;
+import edu.temple.cla.papolicy.transcriptdata.TranscriptExporter;
+import edu.temple.cla.papolicy.transcriptdata.TranscriptReader;
+import edu.temple.cla.papolicy.transcriptdata.TranscriptSnapshotWriter;
+import edu.temple.cla.papolicy.transcriptdata.TranscriptSpan;
+import edu.temple.cla.papolicy.transcriptdata.TranscriptTraceAnalyzer;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import org.apache.log4j.BasicConfigurator;
-import org.apache.log4j.Level;
+import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
+import org.apache.log4j.xml.DOMConfigurator;
 import org.hibernate.HibernateException;
 import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
 import org.hibernate.cfg.Configuration;
+import org.hibernate.dialect.MySQL5Dialect;
 
 /**
  * Program to load the Transcript XML files into the database.
@@ -24,24 +52,399 @@ public class Main {
      * Main method
      * 
      * @param args the command line arguments
+     * Options, which precede the other arguments, are:
+     * <dl>
+     * <dt>--watch</dt>
+     * <dd>Keep running and load each file dropped into the directory.</dd>
+     * <dt>--quiet=<i>millis</i></dt>
+     * <dd>Time a dropped file must be unchanged before it is loaded (default 1000).</dd>
+     * <dt>--reload=<i>catalog</i></dt>
+     * <dd>Load into empty tables in the given staging catalog and then swap
+     * them with the live tables.</dd>
+     * <dt>--budget=<i>millis</i></dt>
+     * <dd>Commit in batches, adjusting the batch size so that each commit
+     * takes about this long and backing off on lock contention.</dd>
+     * <dt>--max-batch=<i>n</i></dt>
+     * <dd>The largest batch used with --budget (default 500).</dd>
+     * <dt>--warmup</dt>
+     * <dd>Build the mapping metadata without connecting to a database and
+     * exit. No other arguments are required.</dd>
+     * <dt>--rollups</dt>
+     * <dd>Update the hearing summary tables in the same transactions as the
+     * transcripts. With --reload the tables are rebuilt after the swap.</dd>
+     * <dt>--rebuild-rollups</dt>
+     * <dd>Recompute the hearing summary tables from the transcript tables
+     * and exit. Only the datasource argument is required.</dd>
+     * <dt>--export=<i>file</i></dt>
+     * <dd>Write the transcripts in the database to the file in the transcript
+     * XML format and exit, compressing it if the name ends in .gz. Only the
+     * datasource argument is required.</dd>
+     * <dt>--convert=jsonl|csv|snapshot --output=<i>path</i></dt>
+     * <dd>Convert the XML file(s) to a JSON Lines file, a directory of CSV
+     * files, or a binary snapshot file without using the database. The
+     * datasource argument is omitted.</dd>
+     * <dt>--diff=<i>oldfile</i> --output=<i>file</i> [--report=<i>file</i>]</dt>
+     * <dd>Compare the XML file with an earlier one without using the
+     * database. The added and changed transcripts are written to the output
+     * file and the change list to the report file (default standard output).
+     * The datasource argument is omitted.</dd>
+     * <dt>--replace</dt>
+     * <dd>Replace transcripts that are already in the database instead of
+     * treating them as duplicates, e.g. when loading the output of --diff.</dd>
+     * <dt>--fuzzy-committees[=<i>threshold</i>]</dt>
+     * <dd>Match a committee name that is not found exactly to the most
+     * similar committee alias of the chamber and hearing year, if the
+     * similarity (0 to 1) reaches the threshold (default 0.75), instead of
+     * adding an "Other" alias. Each distinct doubtful match is logged once
+     * as a warning.</dd>
+     * <dt>--fuzzy-report=<i>file</i></dt>
+     * <dd>Write the distinct doubtful committee matches, with the number
+     * of lookups of each, to the file, tab separated, at the end of the load (with --watch, when the watcher stops).</dd>
+     * <dt>--analyze=<i>recording</i> [--top=<i>n</i>]</dt>
+     * <dd>Summarize the transcript loading events in a Flight Recorder
+     * recording made with -XX:StartFlightRecording: the time spent in each
+     * stage, per file, and for the n slowest transcripts (default 20). No
+     * other arguments are used.</dd>
+     * </dl>
      * args[0] is the name of a file containing the datasource parameters.
      * args[1] is the name of the directory or file containing the XML file(s)
      */
     public static void main(String[] args) {
-        SessionFactory sessionFactory = configureSessionFactory(args[0]);
-        BasicConfigurator.configure();
-        LOGGER.setLevel(Level.INFO);
-        File directory = new File(args[1]);
+        configureLogging();
+        Map<String, String> options = new HashMap<>();
+        List<String> arguments = parseOptions(args, options);
+        if (options.containsKey("warmup")) {
+            warmup();
+            exit(0);
+        }
+        if (options.containsKey("analyze")) {
+            analyze(new File(options.get("analyze")), Integer.parseInt(options.getOrDefault("top", "20")));
+            exit(0);
+        }
+        if (options.containsKey("convert")) {
+            convert(options.get("convert"), new File(options.get("output")), listFiles(new File(arguments.get(0))));
+            exit(0);
+        }
+        if (options.containsKey("diff")) {
+            diff(new File(options.get("diff")), new File(arguments.get(0)),
+                    new File(options.get("output")), options.get("report"));
+            exit(0);
+        }
+        Properties props = loadProperties(arguments.get(0));
+        SessionFactory sessionFactory = configureSessionFactory(props);
+        if (options.containsKey("rebuild-rollups")) {
+            new HearingRollups(sessionFactory).rebuild();
+            exit(0);
+        }
+        if (options.containsKey("export")) {
+            try {
+                new TranscriptExporter(sessionFactory).export(new File(options.get("export")));
+            } catch (IOException ex) {
+                LOGGER.fatal("Unable to export to " + options.get("export"), ex);
+                exit(1);
+            }
+            exit(0);
+        }
+        File directory = new File(arguments.get(1));
+        if (!TranscriptDAO.hasCommitteeAliasKey(sessionFactory)) {
+            LOGGER.warn("CommitteeAliases has no unique key on (Chamber, AlternateName);"
+                    + " loads running at the same time in other processes may add duplicate aliases");
+        }
+        LoadGovernor loadGovernor = null;
+        if (options.containsKey("budget")) {
+            loadGovernor = new LoadGovernor(Long.parseLong(options.get("budget")),
+                    Integer.parseInt(options.getOrDefault("max-batch", "500")));
+        }
+        HearingRollups hearingRollups = null;
+        if (options.containsKey("rollups") && !options.containsKey("reload")) {
+            hearingRollups = new HearingRollups(sessionFactory);
+            hearingRollups.createTables();
+        }
+        CommitteeNameIndex committeeNameIndex = null;
+        if (options.containsKey("fuzzy-committees")) {
+            committeeNameIndex = CommitteeNameIndex.load(sessionFactory);
+            if (!options.get("fuzzy-committees").isEmpty()) {
+                committeeNameIndex.setThreshold(Double.parseDouble(options.get("fuzzy-committees")));
+            }
+        }
+        if (options.containsKey("watch")) {
+            watchDirectory(sessionFactory, directory,
+                    Long.parseLong(options.getOrDefault("quiet", "1000")), loadGovernor, hearingRollups,
+                    committeeNameIndex, options.get("fuzzy-report"));
+            return;
+        }
+        File[] files = listFiles(directory);
+        StagingReload reload = null;
+        SessionFactory loadFactory = sessionFactory;
+        if (options.containsKey("reload")) {
+            reload = new StagingReload(sessionFactory,
+                    props.getProperty("catalog", CatalogNamingStrategy.MAPPED_CATALOG),
+                    options.get("reload"));
+            reload.prepare();
+            Properties stagingProps = new Properties();
+            stagingProps.putAll(props);
+            stagingProps.setProperty("catalog", options.get("reload"));
+            // The live factory is still used by the reload to swap the tables
+            loadFactory = configureSessionFactory(stagingProps);
+        }
+        boolean replace = options.containsKey("replace");
+        if (!checkForDuplicates(loadFactory, files, replace)) {
+            if (reload != null) {
+                loadFactory.close();
+                reload.abort();
+            }
+            exit(1);
+        }
+        ReferenceDataCache referenceDataCache = new ReferenceDataCache();
+        referenceDataCache.setCommitteeNameIndex(committeeNameIndex);
+        int failures = 0;
+        for (File file : files) {
+            if (!processFile(loadFactory, file, loadGovernor, hearingRollups, replace, referenceDataCache,
+                    reload == null)) {
+                failures++;
+                if (reload != null) {
+                    // The rest of the files are not loaded, as the staged
+                    // tables would not be swapped in anyway
+                    break;
+                }
+            }
+        }
+        if (committeeNameIndex != null) {
+            writeFuzzyReport(committeeNameIndex, options.get("fuzzy-report"));
+        }
+        if (failures > 0) {
+            if (reload != null) {
+                LOGGER.fatal("Loading " + failures + " file(s) failed, the live tables were not replaced");
+                loadFactory.close();
+                reload.abort();
+            } else {
+                LOGGER.error("Loading " + failures + " file(s) failed");
+            }
+            exit(1);
+        }
+        if (reload != null) {
+            reload.rebuildIndexes();
+            reload.swap();
+            if (options.containsKey("rollups")) {
+                // Counting the whole reload at once is cheaper than
+                // maintaining the staged rows one transaction at a time.
+                new HearingRollups(sessionFactory).rebuild();
+            }
+        }
+        LOGGER.info("Done processing");
+        exit(0);
+    }
+
+    /**
+     * Method to configure log4j from uploadtranscriptdata-log4j.xml, unless
+     * another configuration is named by the log4j.configuration property.
+     * The file does not have one of the names log4j looks for by default, so
+     * it does not replace the logging configuration of applications that use
+     * the library.
+     */
+    private static void configureLogging() {
+        if (System.getProperty("log4j.configuration") == null) {
+            DOMConfigurator.configure(Main.class.getResource("/uploadtranscriptdata-log4j.xml"));
+        }
+    }
+
+    /**
+     * Method to write the log messages still queued by the AsyncAppender and
+     * end the program. The queue is not flushed by System.exit.
+     *
+     * @param status The exit status
+     */
+    private static void exit(int status) {
+        LogManager.shutdown();
+        System.exit(status);
+    }
+
+    /**
+     * Method to get the input files.
+     *
+     * @param directory A directory or a single file
+     * @return The files in the directory, or the file
+     */
+    private static File[] listFiles(File directory) {
         if (directory.isDirectory()) {
-            File[] files = directory.listFiles();
-            for (File file : files) processFile(sessionFactory, file);
+            return directory.listFiles();
         } else {
-            processFile(sessionFactory, directory);
+            return new File[]{directory};
+        }
+    }
+
+    /**
+     * Method to convert transcript XML files to flat files without loading
+     * them into the database.
+     *
+     * @param format jsonl, csv, or snapshot
+     * @param output The output file, or the directory for the CSV files
+     * @param files The input files
+     */
+    private static void convert(String format, File output, File[] files) {
+        long start = System.currentTimeMillis();
+        TranscriptReader reader = new TranscriptReader();
+        try (FlatFileSink sink = openSink(format, output)) {
+            for (File file : files) {
+                reader.read(file.getPath(), sink);
+            }
+        } catch (IOException ex) {
+            LOGGER.fatal("Unable to convert to " + output, ex);
+            exit(1);
+        } catch (IllegalArgumentException ex) {
+            LOGGER.fatal(ex.getMessage());
+            exit(1);
+        }
+        LOGGER.info("Converted " + files.length + " files in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Method to compare a transcript XML file with an earlier one without
+     * using the database.
+     *
+     * @param oldFile The earlier file
+     * @param newFile The later file
+     * @param delta The file to receive the added and changed transcripts
+     * @param reportFile The file to receive the change list, or null for
+     * standard output
+     */
+    private static void diff(File oldFile, File newFile, File delta, String reportFile) {
+        TranscriptDiff transcriptDiff = new TranscriptDiff(delta.getAbsoluteFile().getParentFile().toPath());
+        try (Writer report = reportFile == null
+                ? new OutputStreamWriter(System.out, StandardCharsets.UTF_8)
+                : new OutputStreamWriter(new FileOutputStream(reportFile), StandardCharsets.UTF_8)) {
+            transcriptDiff.diff(oldFile, newFile, delta, report);
+        } catch (IOException ex) {
+            LOGGER.fatal("Unable to compare " + oldFile + " with " + newFile, ex);
+            exit(1);
+        }
+    }
+
+    private static void analyze(File recording, int top) {
+        if (!TranscriptSpan.isRecorderAvailable()) {
+            LOGGER.fatal("--analyze requires a JVM with Flight Recorder");
+            exit(1);
+        }
+        TranscriptTraceAnalyzer analyzer = new TranscriptTraceAnalyzer();
+        try {
+            analyzer.read(recording.toPath());
+        } catch (IOException ex) {
+            LOGGER.fatal("Unable to read " + recording, ex);
+            exit(1);
+        }
+        analyzer.print(System.out, top);
+    }
+
+    /**
+     * Method to create the sink for a --convert format.
+     *
+     * @param format jsonl, csv, or snapshot
+     * @param output The output file, or the directory for the CSV files
+     * @return The sink
+     * @throws IOException If the output cannot be created
+     * @throws IllegalArgumentException If the format is not known
+     */
+    private static FlatFileSink openSink(String format, File output) throws IOException {
+        switch (format) {
+            case "jsonl":
+                return new JsonLinesSink(output.toPath());
+            case "csv":
+                return new CsvSink(output.toPath());
+            case "snapshot":
+                return new TranscriptSnapshotWriter(output.toPath());
+            default:
+                throw new IllegalArgumentException("Unknown --convert format \"" + format
+                        + "\"; use jsonl, csv, or snapshot");
+        }
+    }
+
+    /**
+     * Method to separate the options from the other command line arguments.
+     * An option has the form --name or --name=value.
+     *
+     * @param args The command line arguments
+     * @param options Map to receive the options
+     * @return The remaining arguments
+     */
+    private static List<String> parseOptions(String[] args, Map<String, String> options) {
+        List<String> arguments = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                int equals = arg.indexOf('=');
+                if (equals == -1) {
+                    options.put(arg.substring(2), "");
+                } else {
+                    options.put(arg.substring(2, equals), arg.substring(equals + 1));
+                }
+            } else {
+                arguments.add(arg);
+            }
+        }
+        return arguments;
+    }
+
+    /**
+     * Method to run as a daemon loading each file dropped into a directory.
+     * Returns when the process is asked to stop.
+     *
+     * @param factory The SessionFactory
+     * @param directory The directory to be watched
+     * @param quietMillis Time a file must be unchanged before it is loaded
+     * @param loadGovernor The LoadGovernor or null
+     * @param hearingRollups The HearingRollups or null
+     * @param committeeNameIndex The CommitteeNameIndex or null
+     * @param fuzzyReport The file to receive the low confidence committee
+     * matches when the watcher stops, or null
+     */
+    private static void watchDirectory(SessionFactory factory, File directory,
+            long quietMillis, LoadGovernor loadGovernor, HearingRollups hearingRollups,
+            CommitteeNameIndex committeeNameIndex, String fuzzyReport) {
+        DirectoryWatcher watcher = new DirectoryWatcher(factory, directory.toPath(), quietMillis);
+        watcher.setLoadGovernor(loadGovernor);
+        watcher.setHearingRollups(hearingRollups);
+        watcher.setCommitteeNameIndex(committeeNameIndex);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                watcher.shutdown(60_000);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            if (committeeNameIndex != null) {
+                writeFuzzyReport(committeeNameIndex, fuzzyReport);
+            }
+            factory.close();
+            // Last, so that the messages of the final load are written
+            LogManager.shutdown();
+        }));
+        try {
+            watcher.run();
+        } catch (IOException ex) {
+            LOGGER.fatal("Unable to watch " + directory, ex);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Method to log the number of low confidence committee matches and
+     * write them to a file for review.
+     *
+     * @param committeeNameIndex The CommitteeNameIndex
+     * @param fileName The file to receive the matches, or null to only log
+     * the number
+     */
+    private static void writeFuzzyReport(CommitteeNameIndex committeeNameIndex, String fileName) {
+        LOGGER.info(committeeNameIndex.getLowConfidenceMatches().size()
+                + " low confidence committee matches");
+        if (fileName == null) {
+            return;
+        }
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(fileName), StandardCharsets.UTF_8)) {
+            committeeNameIndex.writeLowConfidenceMatches(out);
+        } catch (IOException ex) {
+            LOGGER.error("Unable to write " + fileName, ex);
         }
-        LOGGER.info("Done processing");
-        System.exit(0);
     }
-    
+
     /**
      * Method to configure Hibernate and return the SessionFactory
      * @param fileName of the parameters file
@@ -49,38 +452,177 @@ public class Main {
      */
     public static SessionFactory configureSessionFactory(String fileName) {
         try {
-            File file = new File(fileName);
-            Properties props = new Properties();
-            FileInputStream in = new FileInputStream(file);
-            props.load(in);
-            return configureSessionFactory(props);
+            return configureSessionFactory(loadProperties(fileName));
         } catch (Exception ex) {
             throw new RuntimeException("Error configuring SessionFactory", ex);
         }
     }
 
+    /**
+     * Method to read the datasource parameters file.
+     *
+     * @param fileName of the parameters file
+     * @return the parameters
+     */
+    public static Properties loadProperties(String fileName) {
+        try (FileInputStream in = new FileInputStream(new File(fileName))) {
+            Properties props = new Properties();
+            props.load(in);
+            return props;
+        } catch (IOException ex) {
+            throw new RuntimeException("Error reading " + fileName, ex);
+        }
+    }
+
+    /**
+     * Method to configure Hibernate and return the SessionFactory. If the
+     * property catalog is present it replaces the catalog named in the
+     * mapping files. If the property hibernate.dialect is present Hibernate
+     * does not connect to the database at startup to determine it.
+     *
+     * @param props The datasource parameters
+     * @return a session factory
+     * @throws HibernateException if the SessionFactory cannot be built
+     */
     public static SessionFactory configureSessionFactory(Properties props) throws HibernateException {
-        return new Configuration()
+        Configuration configuration = new Configuration();
+        String catalog = props.getProperty("catalog");
+        if (catalog != null) {
+            configuration.setPhysicalNamingStrategy(new CatalogNamingStrategy(catalog));
+        }
+        String dialect = props.getProperty("hibernate.dialect");
+        if (dialect != null) {
+            configuration
+                    .setProperty("hibernate.dialect", dialect)
+                    .setProperty("hibernate.temp.use_jdbc_metadata_defaults", "false");
+        }
+        try {
+            for (File file : MappingFiles.extract(mappingCacheDirectory(props))) {
+                configuration.addCacheableFile(file);
+            }
+        } catch (IOException ex) {
+            LOGGER.warn("Unable to cache mapping files, parsing them instead", ex);
+            for (String resource : MappingFiles.RESOURCES) {
+                configuration.addResource(resource);
+            }
+        }
+        if (props.containsKey("hibernate.connection.pool_size")) {
+            configuration.setProperty("hibernate.connection.pool_size",
+                    props.getProperty("hibernate.connection.pool_size"));
+        }
+        return configuration
                 .setProperty("hibernate.connection.driver_class", props.getProperty("jdbc.driver"))
                 .setProperty("hibernate.connection.url", props.getProperty("jdbc.url"))
                 .setProperty("hibernate.connection.username", props.getProperty("jdbc.username"))
                 .setProperty("hibernate.connection.password", props.getProperty("jdbc.password"))
-                .addResource("Transcript.hbm.xml")
-                .addResource("Witness.hbm.xml")
-                .addResource("CommitteeAliases.hbm.xml")
-                .addResource("BillID.hbm.xml")
                 .buildSessionFactory();
     }
 
+    /**
+     * Method to get the directory in which the parsed mapping files are
+     * cached. This is the property mapping.cache, or .uploadtranscriptdata/mappings
+     * in the user's home directory. A shared directory such as java.io.tmpdir
+     * must not be used, since Hibernate deserializes the files it finds there.
+     *
+     * @param props The datasource parameters
+     * @return The cache directory
+     */
+    private static File mappingCacheDirectory(Properties props) {
+        String directory = props.getProperty("mapping.cache");
+        if (directory == null) {
+            return new File(System.getProperty("user.home"), ".uploadtranscriptdata" + File.separator + "mappings");
+        }
+        return new File(directory);
+    }
+
+    /**
+     * Method to load the Hibernate classes and build the mapping metadata
+     * without connecting to a database. This fills the mapping cache and is
+     * used as the training run when creating a class data sharing archive.
+     */
+    private static void warmup() {
+        StandardServiceRegistry registry = new StandardServiceRegistryBuilder()
+                .applySetting("hibernate.dialect", MySQL5Dialect.class.getName())
+                .applySetting("hibernate.temp.use_jdbc_metadata_defaults", "false")
+                .build();
+        try {
+            MetadataSources sources = new MetadataSources(registry);
+            for (File file : MappingFiles.extract(mappingCacheDirectory(new Properties()))) {
+                sources.addCacheableFile(file);
+            }
+            sources.buildMetadata();
+        } catch (IOException ex) {
+            throw new RuntimeException("Error caching mapping files", ex);
+        } finally {
+            StandardServiceRegistryBuilder.destroy(registry);
+        }
+    }
+
+    /**
+     * Method to check the input files for transcript IDs that are repeated or
+     * are already in the database. This is done before anything is written so
+     * that a large load does not fail part way through at commit time.
+     *
+     * @param factory The SessionFactory
+     * @param files The input files
+     * @param replace true if IDs already in the database are to be replaced
+     * @return true if no duplicates were found
+     */
+    private static boolean checkForDuplicates(SessionFactory factory, File[] files, boolean replace) {
+        long totalBytes = 0;
+        for (File file : files) totalBytes += file.length();
+        // Roughly one transcript per 2KB of XML.
+        int expectedInputIds = (int) Math.min(Integer.MAX_VALUE / 2, totalBytes / 2048 + 1024);
+        DuplicateIdDetector detector = DuplicateIdDetector.fromDatabase(factory, expectedInputIds);
+        for (File file : files) {
+            try {
+                detector.scanFile(file);
+            } catch (IOException ex) {
+                LOGGER.error("Unable to scan " + file + " for duplicate IDs", ex);
+                return false;
+            }
+        }
+        List<DuplicateIdDetector.Duplicate> duplicates = detector.getDuplicates();
+        if (replace) {
+            duplicates.removeIf(DuplicateIdDetector.Duplicate::isInDatabase);
+        }
+        duplicates.forEach(duplicate -> LOGGER.error("Duplicate transcript ID " + duplicate));
+        if (!duplicates.isEmpty()) {
+            LOGGER.error(duplicates.size() + " duplicate transcript IDs found, nothing loaded");
+        }
+        return duplicates.isEmpty();
+    }
+
     /**
      * Method to process a single file containing a set of transcripts
      * 
      * @param factory The SessionFactory
      * @param file file containing the XML document
+     * @param loadGovernor The LoadGovernor or null
+     * @param hearingRollups The HearingRollups or null
+     * @param replace true if transcripts already in the database are replaced
+     * @param referenceDataCache The ReferenceDataCache shared by the files
+     * @param exitOnFailure true if a transaction that cannot be committed
+     * ends the process, false if it is reported as a failed file
+     * @return true if the whole file was loaded
      */
-    private static void processFile(SessionFactory factory, File file) {
+    private static boolean processFile(SessionFactory factory, File file, LoadGovernor loadGovernor,
+            HearingRollups hearingRollups, boolean replace, ReferenceDataCache referenceDataCache,
+            boolean exitOnFailure) {
         TranscriptDAO transcriptDAO = new TranscriptDAO(factory);
-        transcriptDAO.loadDocument(file.getName());
+        transcriptDAO.setReferenceDataCache(referenceDataCache);
+        transcriptDAO.setLoadGovernor(loadGovernor);
+        transcriptDAO.setHearingRollups(hearingRollups);
+        transcriptDAO.setReplaceExisting(replace);
+        transcriptDAO.setExitOnFailure(exitOnFailure);
+        try {
+            return transcriptDAO.loadDocument(file.getPath());
+        } catch (RuntimeException ex) {
+            // A HibernateException when a transaction cannot be committed,
+            // or a value that cannot be parsed
+            LOGGER.error("Unable to load " + file, ex);
+            return false;
+        }
     }
 
 
@@ -0,0 +1,236 @@
+package edu.temple.cla.papolicy.uploadtranscriptdata;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.log4j.Logger;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+
+/**
+ * Performs a full reload of the transcript tables without exposing a partly
+ * loaded state to readers. The tables are created empty in a staging catalog
+ * with their non-unique secondary indexes removed, the reference tables
+ * (BillID and CommitteeAliases) are copied, and the data is loaded into the
+ * staging catalog. The secondary indexes are then rebuilt with one ALTER
+ * TABLE per table and all of the tables are exchanged with the live ones in a
+ * single RENAME TABLE statement, which MySQL performs atomically. The previous
+ * live tables are kept in the staging catalog with the suffix _previous until
+ * the next reload.
+ * <p>
+ * Since the reference tables are replaced by the staged copies, other writers
+ * to BillID and CommitteeAliases should be paused during a reload. Foreign key
+ * constraints are not copied by CREATE TABLE ... LIKE.
+ *
+ * @author Paul Wolfgang
+ */
+public class StagingReload {
+
+    private static final Logger LOGGER = Logger.getLogger(StagingReload.class);
+
+    /** Tables that are loaded from the transcript files. */
+    private static final String[] LOADED_TABLES
+            = {"Transcript", "Witness", "Transcript_BillID", "Transcript_Committee"};
+    /** Reference tables that are copied and then added to. */
+    private static final String[] REFERENCE_TABLES = {"BillID", "CommitteeAliases"};
+    private static final String PREVIOUS_SUFFIX = "_previous";
+
+    private final SessionFactory sessionFactory;
+    private final String liveCatalog;
+    private final String stagingCatalog;
+    private final Map<String, Map<String, String>> deferredIndexes = new LinkedHashMap<>();
+    /** Whether the staging catalog was created by prepare */
+    private boolean createdCatalog;
+
+    /**
+     * Constructor.
+     *
+     * @param factory A SessionFactory connected to the database server
+     * @param liveCatalog The catalog containing the live tables
+     * @param stagingCatalog The catalog to be used for staging
+     */
+    public StagingReload(SessionFactory factory, String liveCatalog, String stagingCatalog) {
+        if (liveCatalog.equals(stagingCatalog)) {
+            throw new IllegalArgumentException("The staging catalog must differ from " + liveCatalog);
+        }
+        this.sessionFactory = factory;
+        this.liveCatalog = liveCatalog;
+        this.stagingCatalog = stagingCatalog;
+    }
+
+    /**
+     * Method to create the empty staging tables. Any tables left from a
+     * previous reload are dropped.
+     */
+    public void prepare() {
+        execute(connection -> {
+            try (PreparedStatement stmt = connection.prepareStatement(
+                    "select 1 from information_schema.SCHEMATA where SCHEMA_NAME = ?")) {
+                stmt.setString(1, stagingCatalog);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    createdCatalog = !rs.next();
+                }
+            }
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("create database if not exists " + quote(stagingCatalog));
+                for (String table : allTables()) {
+                    stmt.execute("drop table if exists " + staging(table) + ", "
+                            + staging(table + PREVIOUS_SUFFIX));
+                    stmt.execute("create table " + staging(table) + " like " + live(table));
+                }
+                for (String table : LOADED_TABLES) {
+                    Map<String, String> indexes = secondaryIndexes(connection, table);
+                    if (!indexes.isEmpty()) {
+                        deferredIndexes.put(table, indexes);
+                        List<String> drops = new ArrayList<>();
+                        for (String indexName : indexes.keySet()) {
+                            drops.add("drop index " + quote(indexName));
+                        }
+                        stmt.execute("alter table " + staging(table) + " " + String.join(", ", drops));
+                    }
+                }
+                for (String table : REFERENCE_TABLES) {
+                    stmt.execute("insert into " + staging(table) + " select * from " + live(table));
+                }
+            }
+        });
+        LOGGER.info("Prepared staging tables in " + stagingCatalog
+                + ", deferred indexes " + deferredIndexes.keySet());
+    }
+
+    /**
+     * Method to rebuild the secondary indexes removed by prepare. All indexes
+     * of a table are added in one statement so that the table is only
+     * rebuilt once.
+     */
+    public void rebuildIndexes() {
+        execute(connection -> {
+            try (Statement stmt = connection.createStatement()) {
+                for (Map.Entry<String, Map<String, String>> entry : deferredIndexes.entrySet()) {
+                    List<String> adds = new ArrayList<>();
+                    for (String definition : entry.getValue().values()) {
+                        adds.add("add " + definition);
+                    }
+                    stmt.execute("alter table " + staging(entry.getKey()) + " " + String.join(", ", adds));
+                    LOGGER.info("Rebuilt indexes on " + entry.getKey());
+                }
+            }
+        });
+    }
+
+    /**
+     * Method to exchange the staging tables with the live tables in a single
+     * atomic RENAME TABLE statement.
+     */
+    public void swap() {
+        List<String> renames = new ArrayList<>();
+        for (String table : allTables()) {
+            renames.add(live(table) + " to " + staging(table + PREVIOUS_SUFFIX));
+            renames.add(staging(table) + " to " + live(table));
+        }
+        execute(connection -> {
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("rename table " + String.join(", ", renames));
+            }
+        });
+        LOGGER.info("Swapped staging tables from " + stagingCatalog + " into " + liveCatalog);
+    }
+
+    /**
+     * Method to discard the staging tables after a failed load, leaving the
+     * live tables as they were. The staging catalog is dropped if it was
+     * created by prepare.
+     */
+    public void abort() {
+        execute(connection -> {
+            try (Statement stmt = connection.createStatement()) {
+                if (createdCatalog) {
+                    stmt.execute("drop database " + quote(stagingCatalog));
+                } else {
+                    for (String table : allTables()) {
+                        stmt.execute("drop table if exists " + staging(table));
+                    }
+                }
+            }
+        });
+        LOGGER.info("Discarded staging tables in " + stagingCatalog);
+    }
+
+    /**
+     * Method to find the non-unique secondary indexes of a live table.
+     *
+     * @return Map from index name to its definition, e.g. index `name` (columns)
+     */
+    private Map<String, String> secondaryIndexes(Connection connection, String table) throws SQLException {
+        Map<String, StringBuilder> columns = new LinkedHashMap<>();
+        Map<String, String> types = new LinkedHashMap<>();
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "select INDEX_NAME, COLUMN_NAME, SUB_PART, INDEX_TYPE"
+                + " from information_schema.STATISTICS"
+                + " where TABLE_SCHEMA = ? and TABLE_NAME = ? and NON_UNIQUE = 1"
+                + " order by INDEX_NAME, SEQ_IN_INDEX")) {
+            stmt.setString(1, liveCatalog);
+            stmt.setString(2, table);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String indexName = rs.getString(1);
+                    StringBuilder stb = columns.computeIfAbsent(indexName, (k) -> new StringBuilder());
+                    if (stb.length() > 0) {
+                        stb.append(", ");
+                    }
+                    stb.append(quote(rs.getString(2)));
+                    if (rs.getObject(3) != null) {
+                        stb.append('(').append(rs.getInt(3)).append(')');
+                    }
+                    types.put(indexName, rs.getString(4));
+                }
+            }
+        }
+        Map<String, String> result = new LinkedHashMap<>();
+        for (Map.Entry<String, StringBuilder> entry : columns.entrySet()) {
+            String kind = "FULLTEXT".equals(types.get(entry.getKey())) ? "fulltext index" : "index";
+            result.put(entry.getKey(), kind + " " + quote(entry.getKey()) + " (" + entry.getValue() + ")");
+        }
+        return result;
+    }
+
+    private static List<String> allTables() {
+        List<String> tables = new ArrayList<>();
+        for (String table : LOADED_TABLES) tables.add(table);
+        for (String table : REFERENCE_TABLES) tables.add(table);
+        return tables;
+    }
+
+    private String live(String table) {
+        return quote(liveCatalog) + "." + quote(table);
+    }
+
+    private String staging(String table) {
+        return quote(stagingCatalog) + "." + quote(table);
+    }
+
+    private static String quote(String identifier) {
+        return "`" + identifier.replace("`", "``") + "`";
+    }
+
+    /**
+     * Work to be done with a JDBC connection.
+     */
+    private interface ConnectionWork {
+
+        void execute(Connection connection) throws SQLException;
+    }
+
+    private void execute(ConnectionWork work) {
+        try (Session session = sessionFactory.openSession()) {
+            session.doWork(work::execute);
+        }
+    }
+
+}
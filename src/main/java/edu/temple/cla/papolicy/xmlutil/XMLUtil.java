@@ -1,12 +1,29 @@
 package edu.temple.cla.papolicy.xmlutil;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 import org.apache.commons.lang3.ClassUtils;
+import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
@@ -18,6 +35,35 @@ import org.w3c.dom.Node;
  */
 public class XMLUtil {
 
+    /**
+     * The declared fields of each class read by readElement, by name, made
+     * accessible once rather than looked up for every element.
+     */
+    private static final ClassValue<Map<String, Field>> DECLARED_FIELDS = new ClassValue<Map<String, Field>>() {
+        @Override
+        protected Map<String, Field> computeValue(Class<?> type) {
+            Map<String, Field> fields = new HashMap<>();
+            for (Field field : type.getDeclaredFields()) {
+                field.setAccessible(true);
+                fields.put(field.getName(), field);
+            }
+            return fields;
+        }
+    };
+
+    /** The String constructor of each class read by readElement, if it has one. */
+    private static final ClassValue<Optional<Constructor<?>>> STRING_CONSTRUCTORS
+            = new ClassValue<Optional<Constructor<?>>>() {
+        @Override
+        protected Optional<Constructor<?>> computeValue(Class<?> type) {
+            try {
+                return Optional.of(type.getDeclaredConstructor(String.class));
+            } catch (NoSuchMethodException ex) {
+                return Optional.empty();
+            }
+        }
+    };
+
     /**
      * Method to read an XML element into an object. The element is assumed to
      * be one of the following:
@@ -51,7 +97,7 @@ public class XMLUtil {
             if (clazz.isPrimitive()) {
                 result = readPrimitive(clazz, e);
             } else if (!hasChildElements(e)) {
-                Constructor c = clazz.getDeclaredConstructor(String.class);
+                Constructor<?> c = stringConstructor(clazz);
                 String text = e.getTextContent().trim();
                 if (!text.isEmpty()) {
                     result = c.newInstance(text);
@@ -60,9 +106,11 @@ public class XMLUtil {
                 result = null;
             } else {
                 result = clazz.newInstance();
-                for (Element child : getChildElements(e)) {
-                    Field field = clazz.getDeclaredField(child.getNodeName());
-                    field.setAccessible(true);
+                for (Element child = firstChildElement(e); child != null; child = nextSiblingElement(child)) {
+                    Field field = DECLARED_FIELDS.get(clazz).get(child.getNodeName());
+                    if (field == null) {
+                        throw new NoSuchFieldException(child.getNodeName());
+                    }
                     Class childType = field.getType();
                     field.set(result, readElement(childType, child));
                 }
@@ -77,6 +125,14 @@ public class XMLUtil {
         return (T) result;
     }
 
+    private static Constructor<?> stringConstructor(Class<?> clazz) throws NoSuchMethodException {
+        Optional<Constructor<?>> c = STRING_CONSTRUCTORS.get(clazz);
+        if (!c.isPresent()) {
+            throw new NoSuchMethodException(clazz.getName() + ".<init>(java.lang.String)");
+        }
+        return c.get();
+    }
+
     /**
      * Method to read the contents of an element as a primitive.
      *
@@ -95,12 +151,73 @@ public class XMLUtil {
         String text = e.getTextContent().trim();
         if (!text.isEmpty()) {
             Class<?> wrapper = ClassUtils.primitiveToWrapper(childType);
-            Constructor<?> c = wrapper.getDeclaredConstructor(String.class);
+            Constructor<?> c = stringConstructor(wrapper);
             result = c.newInstance(text);
         }
         return result;
     }
 
+    /**
+     * Method to get the first child element of an element. Together with
+     * nextSiblingElement this walks the child elements in place, without
+     * building a list:
+     * <pre>
+     * for (Element child = firstChildElement(e); child != null; child = nextSiblingElement(child))
+     * </pre>
+     *
+     * @param e The element to be searched
+     * @return The first child element or null if there is none
+     */
+    public static Element firstChildElement(Element e) {
+        return elementFrom(e.getFirstChild(), null);
+    }
+
+    /**
+     * Method to get the first child element of an element with a given name.
+     *
+     * @param e The element to be searched
+     * @param name The name of the element
+     * @return The first child element with the name or null if there is none
+     */
+    public static Element firstChildElement(Element e, String name) {
+        return elementFrom(e.getFirstChild(), name);
+    }
+
+    /**
+     * Method to get the next sibling element of an element.
+     *
+     * @param e The current element
+     * @return The next sibling element or null if there is none
+     */
+    public static Element nextSiblingElement(Element e) {
+        return elementFrom(e.getNextSibling(), null);
+    }
+
+    /**
+     * Method to get the next sibling element of an element with a given
+     * name.
+     *
+     * @param e The current element
+     * @param name The name of the element
+     * @return The next sibling element with the name or null if there is none
+     */
+    public static Element nextSiblingElement(Element e, String name) {
+        return elementFrom(e.getNextSibling(), name);
+    }
+
+    /**
+     * Method to find the first element, optionally with a given name, at or
+     * after a node among its siblings.
+     */
+    private static Element elementFrom(Node node, String name) {
+        for (Node n = node; n != null; n = n.getNextSibling()) {
+            if (n.getNodeType() == Node.ELEMENT_NODE && (name == null || name.equals(n.getNodeName()))) {
+                return (Element) n;
+            }
+        }
+        return null;
+    }
+
     /**
      * Method to get the first named child of an element
      *
@@ -109,13 +226,7 @@ public class XMLUtil {
      * @return The element with the desired name or null if not found
      */
     public static Element getChildElement(Element e, String name) {
-        Element result = null;
-        for (Node child = e.getFirstChild(); child != null; child = child.getNextSibling()) {
-            if (child.getNodeType() == Node.ELEMENT_NODE && name.equals(child.getNodeName())) {
-                return (Element) child;
-            }
-        }
-        return result;
+        return firstChildElement(e, name);
     }
 
     /**
@@ -153,18 +264,126 @@ public class XMLUtil {
     }
 
     /**
-     * Method to determine if an element has child elements.
+     * Method to open an XML file. If the file name ends in .gz the file is
+     * decompressed as it is read.
      *
-     * @param e The element to be searched
-     * @return true if there is at least one child element
+     * @param fileName The name of the file
+     * @return An input stream containing the XML document
+     * @throws IOException If the file cannot be opened
      */
-    public static boolean hasChildElements(Element e) {
+    public static InputStream openInput(String fileName) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(fileName), 1 << 16);
+        if (fileName.endsWith(".gz")) {
+            try {
+                in = new GZIPInputStream(in, 1 << 16);
+            } catch (IOException ex) {
+                in.close();
+                throw ex;
+            }
+        }
+        return in;
+    }
+
+    /**
+     * Method to create or replace an XML file. If the file name ends in .gz
+     * the file is compressed as it is written.
+     *
+     * @param fileName The name of the file
+     * @return An output stream for the XML document
+     * @throws IOException If the file cannot be opened
+     */
+    public static OutputStream openOutput(String fileName) throws IOException {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(fileName), 1 << 16);
+        if (fileName.endsWith(".gz")) {
+            try {
+                out = new GZIPOutputStream(out, 1 << 16);
+            } catch (IOException ex) {
+                out.close();
+                throw ex;
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Method to build the element at the current position of a streaming
+     * parser, so that one element of a large document can be read with
+     * readElement without building a DOM tree for the whole document. The
+     * element is created by the given document but not added to it.
+     *
+     * @param reader The parser, positioned at the START_ELEMENT event. It is
+     * left at the matching END_ELEMENT event.
+     * @param doc The document used to create the nodes
+     * @return The element
+     * @throws XMLStreamException If the element cannot be read
+     */
+    public static Element buildElement(XMLStreamReader reader, Document doc) throws XMLStreamException {
+        Element root = createElement(reader, doc);
+        Node current = root;
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    current = current.appendChild(createElement(reader, doc));
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    current.appendChild(doc.createTextNode(reader.getText()));
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    if (current == root) {
+                        return root;
+                    }
+                    current = current.getParentNode();
+                    break;
+                default:
+                    break;
+            }
+        }
+        throw new XMLStreamException("Unexpected end of document in " + root.getNodeName());
+    }
+
+    private static Element createElement(XMLStreamReader reader, Document doc) {
+        Element e = doc.createElement(reader.getLocalName());
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            e.setAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+        }
+        return e;
+    }
+
+    /**
+     * Method to write an element, its attributes, and its element and text
+     * content to a streaming writer.
+     *
+     * @param writer The writer
+     * @param e The element
+     * @throws XMLStreamException If the element cannot be written
+     */
+    public static void writeElement(XMLStreamWriter writer, Element e) throws XMLStreamException {
+        writer.writeStartElement(e.getNodeName());
+        for (int i = 0; i < e.getAttributes().getLength(); i++) {
+            Node attribute = e.getAttributes().item(i);
+            writer.writeAttribute(attribute.getNodeName(), attribute.getNodeValue());
+        }
         for (Node child = e.getFirstChild(); child != null; child = child.getNextSibling()) {
             if (child.getNodeType() == Node.ELEMENT_NODE) {
-                return true;
+                writeElement(writer, (Element) child);
+            } else if (child.getNodeType() == Node.TEXT_NODE
+                    || child.getNodeType() == Node.CDATA_SECTION_NODE) {
+                writer.writeCharacters(child.getNodeValue());
             }
         }
-        return false;
+        writer.writeEndElement();
+    }
+
+    /**
+     * Method to determine if an element has child elements.
+     *
+     * @param e The element to be searched
+     * @return true if there is at least one child element
+     */
+    public static boolean hasChildElements(Element e) {
+        return firstChildElement(e) != null;
     }
 
 }
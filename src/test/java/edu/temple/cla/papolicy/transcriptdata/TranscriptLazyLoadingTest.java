@@ -0,0 +1,85 @@
+package edu.temple.cla.papolicy.transcriptdata;
+
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.engine.spi.PersistentAttributeInterceptable;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the bytecode enhanced Transcript loads its long text
+ * properties, summary, audioNotes, and videoNotes, only when one of them is
+ * read. The mapping files are used with an in-memory H2 database.
+ *
+ * @author Paul Wolfgang
+ */
+public class TranscriptLazyLoadingTest {
+
+    private static final String[] LAZY_PROPERTIES = {"summary", "audioNotes", "videoNotes"};
+
+    private static SessionFactory factory;
+
+    @BeforeClass
+    public static void createSessionFactory() {
+        Configuration configuration = new Configuration();
+        for (String resource : MappingFiles.RESOURCES) {
+            configuration.addResource(resource);
+        }
+        factory = configuration
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+                .setProperty("hibernate.connection.driver_class", "org.h2.Driver")
+                .setProperty("hibernate.connection.url", "jdbc:h2:mem:transcripts;DB_CLOSE_DELAY=-1;"
+                        + "INIT=CREATE SCHEMA IF NOT EXISTS PAPolicy_Copy")
+                .setProperty("hibernate.hbm2ddl.auto", "create-drop")
+                .buildSessionFactory();
+        Transcript transcript = new Transcript("T1");
+        transcript.setYear(2010);
+        transcript.setSummary("Summary");
+        transcript.setAudioNotes("Audio notes");
+        transcript.setVideoNotes("Video notes");
+        try (Session session = factory.openSession()) {
+            Transaction tx = session.beginTransaction();
+            session.save(transcript);
+            tx.commit();
+        }
+    }
+
+    @AfterClass
+    public static void closeSessionFactory() {
+        factory.close();
+    }
+
+    @Test
+    public void testEnhanced() {
+        assertTrue("Transcript is not bytecode enhanced",
+                PersistentAttributeInterceptable.class.isAssignableFrom(Transcript.class));
+    }
+
+    @Test
+    public void testLazyPropertiesLoadedWhenRead() {
+        try (Session session = factory.openSession()) {
+            Transcript transcript = session.get(Transcript.class, "T1");
+            assertEquals(Integer.valueOf(2010), transcript.getYear());
+            for (String property : LAZY_PROPERTIES) {
+                assertFalse(property + " was loaded with the transcript",
+                        Hibernate.isPropertyInitialized(transcript, property));
+            }
+            assertEquals("Summary", transcript.getSummary());
+            assertEquals("Audio notes", transcript.getAudioNotes());
+            assertEquals("Video notes", transcript.getVideoNotes());
+            for (String property : LAZY_PROPERTIES) {
+                assertTrue(property + " was not loaded when read",
+                        Hibernate.isPropertyInitialized(transcript, property));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,359 @@
+package edu.temple.cla.papolicy.transcriptdata;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.SynchronizedHistogram;
+import org.apache.log4j.Logger;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+
+/**
+ * Load test of concurrent uploads, as made when several users upload files
+ * through the web application at once. Each run starts a number of threads,
+ * each of which loads synthetic transcript files with its own
+ * TranscriptDAO(factory, fileID, tableID), and records the latency of each
+ * upload in an HdrHistogram along with the throughput and the number of
+ * uploads that failed because of a deadlock or lock wait timeout, or for any
+ * other reason.
+ * <p>
+ * The transcripts of a run draw their bills and committees from small shared
+ * pools of names that are not yet in the database, so that concurrent uploads
+ * contend on inserting the same BillID rows, the join tables, and the "Other
+ * House Committee" aliases. The files are generated before the clock starts.
+ * Every ID and name generated starts with a tag chosen for the test, and the
+ * rows are deleted by cleanup. The database should still be a scratch copy,
+ * since the uploads lock the shared tables while the test runs.
+ * <p>
+ * TranscriptLoadTest runs the harness from Maven.
+ *
+ * @author Paul Wolfgang
+ */
+public class TranscriptLoadHarness {
+
+    private static final Logger LOGGER = Logger.getLogger(TranscriptLoadHarness.class);
+    /** The largest number of uploads or transcripts per upload. */
+    private static final int MAX_COUNT = 36 * 36 * 36;
+
+    private final SessionFactory sessionFactory;
+    /** The start of every transcript ID, bill ID, and committee name. */
+    private final String tag;
+    private int uploads = 50;
+    private int transcriptsPerUpload = 20;
+    private int billPoolSize = 40;
+    private int committeePoolSize = 8;
+    private int tableID = 1;
+    private long budgetMillis;
+    private int maxBatchSize = 500;
+    private int runs;
+
+    /**
+     * The measurements of one run.
+     */
+    public static class Result {
+
+        private final int concurrency;
+        private final Histogram latency = new SynchronizedHistogram(3);
+        private final AtomicInteger deadlocks = new AtomicInteger();
+        private final AtomicInteger errors = new AtomicInteger();
+        private int transcripts;
+        private long elapsedNanos;
+
+        private Result(int concurrency) {
+            this.concurrency = concurrency;
+        }
+
+        /** @return The number of concurrent uploads */
+        public int getConcurrency() {return concurrency;}
+
+        /** @return The latency of the completed uploads in microseconds */
+        public Histogram getLatency() {return latency;}
+
+        /** @return The number of deadlocks and lock wait timeouts */
+        public int getDeadlocks() {return deadlocks.get();}
+
+        /** @return The number of uploads that failed for other reasons */
+        public int getErrors() {return errors.get();}
+
+        /** @return The elapsed time of the run in nanoseconds */
+        public long getElapsedNanos() {return elapsedNanos;}
+
+        /** @return The completed uploads per second */
+        public double getUploadsPerSecond() {
+            return latency.getTotalCount() * 1e9 / elapsedNanos;
+        }
+
+        /** @return The transcripts of the completed uploads per second */
+        public double getTranscriptsPerSecond() {
+            return transcripts * 1e9 / elapsedNanos;
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param factory The SessionFactory
+     */
+    public TranscriptLoadHarness(SessionFactory factory) {
+        this.sessionFactory = factory;
+        this.tag = "L" + base36(new Random().nextInt(MAX_COUNT));
+    }
+
+    /**
+     * @param uploads The number of files uploaded in each run (default 50)
+     */
+    public void setUploads(int uploads) {
+        this.uploads = checkCount(uploads);
+    }
+
+    /**
+     * @param transcriptsPerUpload The number of transcripts in each file
+     * (default 20)
+     */
+    public void setTranscriptsPerUpload(int transcriptsPerUpload) {
+        this.transcriptsPerUpload = checkCount(transcriptsPerUpload);
+    }
+
+    /**
+     * @param billPoolSize The number of bill IDs shared by the transcripts of
+     * a run (default 40). Fewer bills means more contention.
+     */
+    public void setBillPoolSize(int billPoolSize) {
+        this.billPoolSize = Math.max(1, billPoolSize);
+    }
+
+    /**
+     * @param committeePoolSize The number of new committee names shared by
+     * the transcripts of a run (default 8)
+     */
+    public void setCommitteePoolSize(int committeePoolSize) {
+        this.committeePoolSize = Math.max(1, committeePoolSize);
+    }
+
+    /**
+     * @param tableID The table ID recorded in FileDocument (default 1)
+     */
+    public void setTableID(int tableID) {
+        this.tableID = tableID;
+    }
+
+    /**
+     * Sets the uploads of each run to share a LoadGovernor, as with the
+     * --budget option.
+     * Transactions retried by the governor after a deadlock are counted as
+     * deadlocks.
+     *
+     * @param budgetMillis The latency budget, or 0 to commit each transcript
+     * on its own without retries (the default)
+     * @param maxBatchSize The largest batch
+     */
+    public void setBudget(long budgetMillis, int maxBatchSize) {
+        this.budgetMillis = budgetMillis;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * @return The prefix of the IDs and names generated by the test
+     */
+    public String getTag() {
+        return tag;
+    }
+
+    private static int checkCount(int count) {
+        if (count < 1 || count > MAX_COUNT) {
+            throw new IllegalArgumentException("Count must be from 1 to " + MAX_COUNT);
+        }
+        return count;
+    }
+
+    /**
+     * Method to upload the files of one run with the given number of threads.
+     * Each run generates new transcripts, bills, and committees.
+     *
+     * @param concurrency The number of concurrent uploads
+     * @return The measurements
+     * @throws InterruptedException If interrupted while waiting for the
+     * uploads
+     */
+    public Result run(int concurrency) throws InterruptedException {
+        if (runs >= 36) {
+            throw new IllegalStateException("At most 36 runs are supported");
+        }
+        String prefix = tag + Character.forDigit(runs++, 36);
+        List<byte[]> files = new ArrayList<>(uploads);
+        Random random = new Random(runs);
+        for (int upload = 0; upload < uploads; upload++) {
+            files.add(generate(prefix, upload, random));
+        }
+        LoadGovernor loadGovernor = budgetMillis > 0
+                ? new LoadGovernor(budgetMillis, maxBatchSize) : null;
+        Result result = new Result(concurrency);
+        AtomicInteger completed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        for (int upload = 0; upload < uploads; upload++) {
+            int fileID = upload + 1;
+            byte[] file = files.get(upload);
+            executor.execute(() -> {
+                try {
+                    start.await();
+                    TranscriptDAO dao = new TranscriptDAO(sessionFactory, fileID, tableID);
+                    dao.setExitOnFailure(false);
+                    dao.setLoadGovernor(loadGovernor);
+                    long begin = System.nanoTime();
+                    if (dao.loadDocument(new ByteArrayInputStream(file))) {
+                        result.latency.recordValue((System.nanoTime() - begin) / 1000);
+                        completed.incrementAndGet();
+                    } else {
+                        result.errors.incrementAndGet();
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (RuntimeException ex) {
+                    if (LoadGovernor.isContention(ex)) {
+                        result.deadlocks.incrementAndGet();
+                    } else {
+                        result.errors.incrementAndGet();
+                    }
+                    LOGGER.warn("Upload " + fileID + " failed", ex);
+                }
+            });
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        result.elapsedNanos = System.nanoTime() - begin;
+        result.transcripts = completed.get() * transcriptsPerUpload;
+        if (loadGovernor != null) {
+            result.deadlocks.addAndGet((int) loadGovernor.getContentionCount());
+        }
+        return result;
+    }
+
+    /**
+     * Method to generate the transcript XML file for one upload.
+     */
+    private byte[] generate(String prefix, int upload, Random random) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+            writer.writeStartDocument("UTF-8", "1.0");
+            writer.writeStartElement("transcripts");
+            for (int i = 0; i < transcriptsPerUpload; i++) {
+                writer.writeStartElement("transcript");
+                writer.writeAttribute("id", prefix + base36(upload) + base36(i));
+                writeElement(writer, "year", "2020");
+                writeElement(writer, "number", Integer.toString(i));
+                writeElement(writer, "budgetRelated", Boolean.toString(random.nextBoolean()));
+                writeElement(writer, "hearingYear", "2020");
+                writeElement(writer, "hearingMonth", Integer.toString(1 + random.nextInt(12)));
+                writeElement(writer, "hearingDay", Integer.toString(1 + random.nextInt(28)));
+                writeElement(writer, "hearingLocation", "Harrisburg");
+                writeElement(writer, "pages", Integer.toString(1 + random.nextInt(200)));
+                writeElement(writer, "summary", "Load test upload " + upload + " transcript " + i);
+                writer.writeStartElement("bills");
+                for (int b = 0; b < 2; b++) {
+                    writer.writeEmptyElement("bill");
+                    writer.writeAttribute("id", prefix + "-HB" + random.nextInt(billPoolSize));
+                }
+                writer.writeEndElement();
+                writer.writeStartElement("committees");
+                writeElement(writer, "committee", committeeName(prefix, random.nextInt(committeePoolSize)));
+                writer.writeEndElement();
+                writer.writeStartElement("witnesses");
+                writer.writeStartElement("witness");
+                writeElement(writer, "firstName", "Test");
+                writeElement(writer, "lastName", "Witness" + i);
+                writer.writeEndElement();
+                writer.writeEndElement();
+                writer.writeEndElement();
+            }
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.close();
+        } catch (XMLStreamException ex) {
+            throw new IllegalStateException("Unable to generate a load test file", ex);
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeElement(XMLStreamWriter writer, String name, String value)
+            throws XMLStreamException {
+        writer.writeStartElement(name);
+        writer.writeCharacters(value);
+        writer.writeEndElement();
+    }
+
+    private static String committeeName(String prefix, int i) {
+        return "Load Test " + prefix + " Committee " + i;
+    }
+
+    /**
+     * @return n as three base 36 digits
+     */
+    private static String base36(int n) {
+        return Integer.toString(MAX_COUNT + n, 36).substring(1);
+    }
+
+    /**
+     * Method to delete the rows added by the runs: the transcripts and their
+     * witnesses and links, the FileDocument rows, the bills, and the
+     * committee aliases.
+     */
+    public void cleanup() {
+        String transcriptTable = TranscriptDAO.tableName(sessionFactory, Transcript.class);
+        String catalogPrefix = transcriptTable.substring(0, transcriptTable.lastIndexOf('.') + 1);
+        String[] deletes = {
+            "delete from " + TranscriptDAO.tableName(sessionFactory, Witness.class) + " where TranscriptID like :tag",
+            "delete from " + catalogPrefix + "Transcript_BillID where TranscriptID like :tag",
+            "delete from " + catalogPrefix + "Transcript_Committee where transcriptID like :tag",
+            "delete from " + transcriptTable + " where ID like :tag",
+            "delete from FileDocument where DocumentID like :tag",
+            "delete from " + TranscriptDAO.tableName(sessionFactory, BillID.class) + " where billID like :tag",
+            "delete from " + TranscriptDAO.tableName(sessionFactory, CommitteeAliases.class)
+                    + " where AlternateName like concat('Load Test ', :tag)"
+        };
+        try (Session session = sessionFactory.openSession()) {
+            Transaction tx = session.beginTransaction();
+            int rows = 0;
+            for (String delete : deletes) {
+                rows += session.createNativeQuery(delete).setParameter("tag", tag + "%").executeUpdate();
+            }
+            tx.commit();
+            LOGGER.info("Deleted " + rows + " load test rows");
+        }
+    }
+
+    /**
+     * Method to print a table of the results of several runs.
+     *
+     * @param out The destination
+     * @param results The results
+     */
+    public static void print(PrintStream out, List<Result> results) {
+        out.println("Threads  Uploads/s  Transcripts/s   p50 ms   p95 ms   p99 ms   max ms  Deadlocks  Errors");
+        for (Result result : results) {
+            Histogram latency = result.getLatency();
+            out.printf("%7d %10.1f %14.1f %8.1f %8.1f %8.1f %8.1f %10d %7d%n", result.getConcurrency(),
+                    result.getUploadsPerSecond(), result.getTranscriptsPerSecond(),
+                    latency.getValueAtPercentile(50) / 1000.0, latency.getValueAtPercentile(95) / 1000.0,
+                    latency.getValueAtPercentile(99) / 1000.0, latency.getMaxValue() / 1000.0,
+                    result.getDeadlocks(), result.getErrors());
+        }
+    }
+
+}
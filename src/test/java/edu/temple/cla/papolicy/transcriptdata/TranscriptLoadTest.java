@@ -0,0 +1,67 @@
+package edu.temple.cla.papolicy.transcriptdata;
+
+import edu.temple.cla.papolicy.uploadtranscriptdata.Main;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.log4j.Logger;
+import org.hibernate.SessionFactory;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Runs the TranscriptLoadHarness against a scratch database. The test is
+ * skipped unless the system property loadtest.datasource names a datasource
+ * properties file as used by Main:
+ * <pre>
+ * mvn test -Dtest=TranscriptLoadTest -Dloadtest.datasource=datasource.properties
+ * </pre>
+ * Optional properties: loadtest.concurrency, the numbers of concurrent
+ * uploads to run in turn (default 1,2,4,8); loadtest.uploads and
+ * loadtest.transcripts (default 50 and 20); loadtest.budget and
+ * loadtest.maxBatch, to share a LoadGovernor as with --budget; and
+ * loadtest.report, a file to receive the full latency distributions.
+ *
+ * @author Paul Wolfgang
+ */
+public class TranscriptLoadTest {
+
+    private static final Logger LOGGER = Logger.getLogger(TranscriptLoadTest.class);
+
+    @Test
+    public void testConcurrentUploads() throws IOException, InterruptedException {
+        String datasource = System.getProperty("loadtest.datasource");
+        Assume.assumeNotNull(datasource);
+        SessionFactory factory = Main.configureSessionFactory(datasource);
+        try {
+            TranscriptLoadHarness harness = new TranscriptLoadHarness(factory);
+            harness.setUploads(Integer.getInteger("loadtest.uploads", 50));
+            harness.setTranscriptsPerUpload(Integer.getInteger("loadtest.transcripts", 20));
+            harness.setBudget(Long.getLong("loadtest.budget", 0), Integer.getInteger("loadtest.maxBatch", 500));
+            List<TranscriptLoadHarness.Result> results = new ArrayList<>();
+            try {
+                for (String concurrency : System.getProperty("loadtest.concurrency", "1,2,4,8").split(",")) {
+                    TranscriptLoadHarness.Result result = harness.run(Integer.parseInt(concurrency.trim()));
+                    LOGGER.info("Finished load test with " + result.getConcurrency() + " concurrent uploads");
+                    results.add(result);
+                }
+            } finally {
+                harness.cleanup();
+            }
+            TranscriptLoadHarness.print(System.out, results);
+            String reportFile = System.getProperty("loadtest.report");
+            if (reportFile != null) {
+                try (PrintStream report = new PrintStream(reportFile, "UTF-8")) {
+                    for (TranscriptLoadHarness.Result result : results) {
+                        report.println("Concurrency " + result.getConcurrency() + " latency (ms)");
+                        result.getLatency().outputPercentileDistribution(report, 1000.0);
+                    }
+                }
+            }
+        } finally {
+            factory.close();
+        }
+    }
+
+}
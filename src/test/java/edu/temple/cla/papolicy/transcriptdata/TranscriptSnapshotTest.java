@@ -0,0 +1,158 @@
+package edu.temple.cla.papolicy.transcriptdata;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Round trip of transcripts through TranscriptSnapshotWriter and
+ * TranscriptSnapshot.
+ *
+ * @author Paul Wolfgang
+ */
+public class TranscriptSnapshotTest {
+
+    private static final String XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<transcripts>\n"
+            + "  <transcript id=\"T1\">\n"
+            + "    <year>2010</year><number>7</number><budgetRelated>true</budgetRelated>\n"
+            + "    <hearingYear>2010</hearingYear><hearingMonth>1</hearingMonth><hearingDay>2</hearingDay>\n"
+            + "    <hearingLocation>Harrisburg &amp; Main</hearingLocation><pages>10</pages>\n"
+            + "    <receivedYear>2010</receivedYear><receivedMonth>3</receivedMonth><receviedDay>4</receviedDay>\n"
+            + "    <comments>Café – 中文</comments>"
+            + "<datePresentedToHouse>05/06/2010</datePresentedToHouse>\n"
+            + "    <summary>A summary longer than the strings that are deduplicated."
+            + " A summary longer than the strings that are deduplicated."
+            + " A summary longer than the strings that are deduplicated.</summary>\n"
+            + "    <hasAudio>true</hasAudio><audioNotes>a</audioNotes>"
+            + "<hasVideo>false</hasVideo><videoNotes></videoNotes>\n"
+            + "    <transcriptURL>http://example.org/1</transcriptURL>\n"
+            + "    <bills><bill id=\"HB1\"/><bill id=\"SB2\"/></bills>\n"
+            + "    <committees><committee>Aging</committee><committee>Senate Appropriations</committee></committees>\n"
+            + "    <witnesses><witness><salutation>Mr.</salutation><firstName>John</firstName>"
+            + "<middleName></middleName><suffix></suffix><lastName>Doe</lastName>"
+            + "<title>Secretary</title><testimonyURL></testimonyURL></witness>"
+            + "<witness><firstName>Jane</firstName><lastName>Roe</lastName></witness></witnesses>\n"
+            + "  </transcript>\n"
+            + "  <transcript id=\"T2\">\n"
+            + "    <year>2011</year>\n"
+            + "    <committees><committee>Aging</committee></committees>\n"
+            + "  </transcript>\n"
+            + "</transcripts>\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        List<Transcript> expected = new ArrayList<>();
+        new TranscriptReader().read(new ByteArrayInputStream(XML.getBytes(StandardCharsets.UTF_8)),
+                expected::add);
+        Path file = folder.getRoot().toPath().resolve("transcripts.snapshot");
+        try (TranscriptSnapshotWriter writer = new TranscriptSnapshotWriter(file)) {
+            for (Transcript t : expected) {
+                writer.write(t);
+            }
+        }
+        assertArrayEquals("Temporary column files remain", new String[]{"transcripts.snapshot"},
+                folder.getRoot().list());
+
+        TranscriptSnapshot snapshot = TranscriptSnapshot.open(file);
+        assertEquals(expected.size(), snapshot.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Transcript t = expected.get(i);
+            Transcript actual = snapshot.get(i);
+            assertEquals(t.getId(), snapshot.getId(i));
+            assertEquals(i, snapshot.indexOf(t.getId()));
+            assertArrayEquals(TranscriptColumns.values(t), TranscriptColumns.values(actual));
+            assertEquals(witnesses(t), witnesses(actual));
+            assertEquals(bills(t), bills(actual));
+            assertEquals(committees(t), committees(actual));
+        }
+        assertEquals("Café – 中文", snapshot.getValue(0, "comments"));
+        assertNull(snapshot.getValue(1, "summary"));
+        assertEquals(-1, snapshot.indexOf("T3"));
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("empty.snapshot");
+        new TranscriptSnapshotWriter(file).close();
+        assertEquals(0, TranscriptSnapshot.open(file).size());
+    }
+
+    @Test
+    public void testFailedWrite() throws IOException {
+        List<Transcript> transcripts = new ArrayList<>();
+        new TranscriptReader().read(new ByteArrayInputStream(XML.getBytes(StandardCharsets.UTF_8)),
+                transcripts::add);
+        Transcript t = transcripts.get(0);
+        t.getWitnesses().add(null);
+        Path file = folder.getRoot().toPath().resolve("transcripts.snapshot");
+        TranscriptSnapshotWriter writer = new TranscriptSnapshotWriter(file);
+        try {
+            writer.write(t);
+            fail("A null witness was written");
+        } catch (NullPointerException ex) {
+            // The transcript columns were written before the witnesses
+        }
+        writer.close();
+        assertArrayEquals("A snapshot or column files were written", new String[0],
+                folder.getRoot().list());
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotASnapshot() throws IOException {
+        File file = folder.newFile("transcripts.xml");
+        Files.write(file.toPath(), XML.getBytes(StandardCharsets.UTF_8));
+        TranscriptSnapshot.open(file.toPath());
+    }
+
+    private static List<List<Object>> witnesses(Transcript t) {
+        List<List<Object>> result = new ArrayList<>();
+        if (t.getWitnesses() != null) {
+            for (Witness witness : t.getWitnesses()) {
+                List<Object> values = new ArrayList<>();
+                for (Object value : TranscriptColumns.values(witness)) {
+                    values.add(value);
+                }
+                result.add(values);
+            }
+        }
+        return result;
+    }
+
+    private static List<String> bills(Transcript t) {
+        List<String> result = new ArrayList<>();
+        if (t.getBills() != null) {
+            for (BillID billID : t.getBills()) {
+                result.add(billID.getBillID());
+            }
+        }
+        return result;
+    }
+
+    private static List<String> committees(Transcript t) {
+        List<String> result = new ArrayList<>();
+        if (t.getCommittees() != null) {
+            for (CommitteeAliases committee : t.getCommittees()) {
+                result.add(committee.getChamber() + ":" + committee.getAlternateName());
+            }
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,101 @@
+package edu.temple.cla.papolicy.uploadtranscriptdata;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ResourceBundle;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.Test;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that the GraalVM native image configuration still matches the
+ * class path: every class it names exists, the serialized classes are
+ * Serializable, and the resources it names by their exact name are present.
+ * The native image itself is built by the native profile.
+ *
+ * @author Paul Wolfgang
+ */
+public class NativeImageConfigTest {
+
+    private static final String CONFIG
+            = "META-INF/native-image/edu.temple.cla.policydb/uploadtranscriptdata/";
+    private static final Pattern NAME = Pattern.compile("\"name\": \"([^\"]+)\"");
+    private static final Pattern INTERFACE = Pattern.compile("\"([\\w.$]+)\"");
+    private static final Pattern LITERAL = Pattern.compile("\"pattern\": \"\\\\\\\\Q(.+)\\\\\\\\E\"");
+
+    @Test
+    public void testReflectedClassesExist() throws IOException {
+        for (String name : matches(NAME, read("reflect-config.json"))) {
+            load(name);
+        }
+    }
+
+    @Test
+    public void testSerializedClassesAreSerializable() throws IOException {
+        for (String name : matches(NAME, read("serialization-config.json"))) {
+            assertTrue(name + " is not Serializable", Serializable.class.isAssignableFrom(load(name)));
+        }
+    }
+
+    @Test
+    public void testProxyInterfacesExist() throws IOException {
+        for (String name : matches(INTERFACE, read("proxy-config.json"))) {
+            if (!name.equals("interfaces")) {
+                assertTrue(name + " is not an interface", load(name).isInterface());
+            }
+        }
+    }
+
+    @Test
+    public void testResourcesExist() throws IOException {
+        String config = read("resource-config.json");
+        for (String resource : matches(LITERAL, config)) {
+            assertNotNull("Missing resource " + resource,
+                    getClass().getClassLoader().getResource(resource));
+        }
+        for (String bundle : matches(NAME, config)) {
+            assertNotNull(ResourceBundle.getBundle(bundle));
+        }
+    }
+
+    private static Class<?> load(String name) {
+        try {
+            return Class.forName(name, false, NativeImageConfigTest.class.getClassLoader());
+        } catch (ClassNotFoundException | LinkageError ex) {
+            fail("Cannot load " + name + ": " + ex);
+            return null;
+        }
+    }
+
+    private static List<String> matches(Pattern pattern, String text) {
+        List<String> result = new ArrayList<>();
+        Matcher matcher = pattern.matcher(text);
+        while (matcher.find()) {
+            result.add(matcher.group(1));
+        }
+        return result;
+    }
+
+    private static String read(String file) throws IOException {
+        try (InputStream in = NativeImageConfigTest.class.getClassLoader().getResourceAsStream(CONFIG + file)) {
+            assertNotNull("Missing " + CONFIG + file, in);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                bytes.write(buffer, 0, n);
+            }
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+}